@@ -0,0 +1,87 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 pthom.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package Generator;
+
+// imports
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the usual JMH command line, adding the GC
+ * profiler so allocation rates are reported next to throughput. Listing
+ * and help options (-l, -lp, -h and so on) work like in JMH's own main.
+ *
+ * @author pthom
+ */
+public class BenchmarkMain
+{
+    /**
+     * @param args JMH command line arguments
+     * @throws Exception if the benchmarks cannot be run
+     */
+    public static void main(String[] args) throws Exception
+    {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        if (commandLine.shouldHelp())
+        {
+            commandLine.showHelp();
+            return;
+        } // end if help
+        if (commandLine.shouldListProfilers())
+        {
+            commandLine.listProfilers();
+            return;
+        } // end if list profilers
+        if (commandLine.shouldListResultFormats())
+        {
+            commandLine.listResultFormats();
+            return;
+        } // end if list result formats
+
+        ChainedOptionsBuilder options = new OptionsBuilder().parent(commandLine);
+
+        // report allocation rates unless other profilers were asked for
+        if (commandLine.getProfilers().isEmpty())
+        {
+            options.addProfiler(GCProfiler.class);
+        } // end if no profilers
+
+        Runner runner = new Runner(options.build());
+        if (commandLine.shouldList())
+        {
+            runner.list();
+        } // end if list
+        else if (commandLine.shouldListWithParams())
+        {
+            runner.listWithParams(commandLine);
+        } // end if list with parameters
+        else
+        {
+            runner.run();
+        } // end else run
+    } // end main
+} // end BenchmarkMain
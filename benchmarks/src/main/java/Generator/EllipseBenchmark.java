@@ -0,0 +1,90 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 pthom.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package Generator;
+
+// imports
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks evaluating a margin ellipse over one row of pixels, the way
+ * drawLinear walks it, one x value per column.
+ *
+ * @author pthom
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EllipseBenchmark
+{
+    // half of the width of the ellipse in pixels, 256 px to 8K images
+    @Param({"64", "640", "3840"})
+    public int h;
+
+    private EllipseMath.Ellipse ellipse;
+    private double[] xs;
+    private double[] ys;
+
+    @Setup
+    public void setUp()
+    {
+        ellipse = new EllipseMath.Ellipse(h, h / 4.0);
+        xs = new double[2 * h];
+        ys = new double[2 * h];
+        for (int i = 0; i < xs.length; i++)
+        {
+            xs[i] = i - h;
+        } // end for xs
+    } // end setUp
+
+    @Benchmark
+    public void getValueAtX(Blackhole blackhole)
+    {
+        for (int i = 0; i < xs.length; i++)
+        {
+            blackhole.consume(ellipse.getValueAtX(xs[i]));
+        } // end for xs
+    } // end getValueAtX
+
+    @Benchmark
+    public double[] sample()
+    {
+        ellipse.sample(xs, ys);
+        return ys;
+    } // end sample
+} // end EllipseBenchmark
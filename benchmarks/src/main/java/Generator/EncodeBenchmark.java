@@ -0,0 +1,95 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 pthom.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package Generator;
+
+// imports
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import javax.imageio.ImageIO;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks encoding a rendered leaf to PNG through ImageIO and through
+ * the built in PngEncoder.
+ *
+ * @author pthom
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g", "-Djava.awt.headless=true"})
+public class EncodeBenchmark
+{
+    @Param({"256x256", "1280x720", "1920x1080", "3840x2160", "7680x4320"})
+    public String size;
+
+    private BufferedImage image;
+    private PngEncoder encoder;
+    private ByteArrayOutputStream out;
+
+    @Setup
+    public void setUp()
+    {
+        String[] dimensions = size.split("x");
+        int width = Integer.parseInt(dimensions[0]);
+        int height = Integer.parseInt(dimensions[1]);
+
+        image = new Generator(width, height, 0.7, 1, 0.1,
+                "pinnate", new double[] {4, 45, 1.0, 1.0, 1.0, 1.0},
+                "linear", new double[] {0.2, 0.2, 0.6}).createBufferedImage();
+        encoder = new PngEncoder(6);
+        encoder.setLossyReduction(true);
+        out = new ByteArrayOutputStream(1 << 20);
+    } // end setUp
+
+    @Benchmark
+    public int imageIO() throws IOException
+    {
+        out.reset();
+        ImageIO.write(image, "png", out);
+        return out.size();
+    } // end imageIO
+
+    @Benchmark
+    public int pngEncoder() throws IOException
+    {
+        out.reset();
+        encoder.encode(image, out);
+        return out.size();
+    } // end pngEncoder
+} // end EncodeBenchmark
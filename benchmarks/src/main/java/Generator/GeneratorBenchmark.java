@@ -0,0 +1,168 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 pthom.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package Generator;
+
+// imports
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the per-leaf work of the Generator across image sizes and
+ * vein counts. Lives in the Generator package so it can reach the midrib,
+ * the veins and the lamina directly.
+ *
+ * @author pthom
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g", "-Djava.awt.headless=true"})
+public class GeneratorBenchmark
+{
+    @Param({"256x256", "1280x720", "1920x1080", "3840x2160", "7680x4320"})
+    public String size;
+
+    @Param({"2", "4", "8", "16"})
+    public int veins;
+
+    private int width;
+    private int height;
+    private double[] primaryVeinParameters;
+    private Generator leaf;
+    private Generator toothedLeaf;
+    private LeafMask mask;
+    private BufferedImage image;
+    private Graphics2D g2;
+    private RenderContext texturedContext;
+
+    @Setup
+    public void setUp()
+    {
+        String[] dimensions = size.split("x");
+        width = Integer.parseInt(dimensions[0]);
+        height = Integer.parseInt(dimensions[1]);
+
+        primaryVeinParameters = new double[2 + veins];
+        primaryVeinParameters[0] = veins;
+        primaryVeinParameters[1] = 45.0;
+        for (int i = 2; i < primaryVeinParameters.length; i++)
+        {
+            primaryVeinParameters[i] = 1.0;
+        } // end for veins
+
+        leaf = newLeaf();
+        toothedLeaf = new LeafSpec(width, height, 0.7, 0.1,
+                "pinnate", primaryVeinParameters, "linear",
+                new double[] {0.2, 0.2, 0.6}, "saw-toothed", 0)
+                .createGenerator();
+        mask = new LeafMask(width, height);
+        image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        g2 = image.createGraphics();
+        texturedContext = RenderContext.fromDefaults(true)
+                .withTextures(NoiseTextures.get(42, 8, 512), 1.0);
+    } // end setUp
+
+    @TearDown
+    public void tearDown()
+    {
+        g2.dispose();
+    } // end tearDown
+
+    private Generator newLeaf()
+    {
+        return new Generator(width, height, 0.7, 1, 0.1,
+                "pinnate", primaryVeinParameters.clone(),
+                "linear", new double[] {0.2, 0.2, 0.6});
+    } // end newLeaf
+
+    @Benchmark
+    public Generator construct()
+    {
+        return newLeaf();
+    } // end construct
+
+    @Benchmark
+    public LeafMask castMidrib()
+    {
+        return leaf.veins.midrib.castMidrib(mask);
+    } // end castMidrib
+
+    @Benchmark
+    public LeafMask castVeins()
+    {
+        return leaf.veins.primaryVeins.castVeins(mask, leaf.getVeinGeometry());
+    } // end castVeins
+
+    @Benchmark
+    public LeafMask constructWithMask()
+    {
+        return newLeaf().getLeafMask();
+    } // end constructWithMask
+
+    @Benchmark
+    public BufferedImage createBufferedImage()
+    {
+        return leaf.createBufferedImage();
+    } // end createBufferedImage
+
+    @Benchmark
+    public BufferedImage createToothedImage()
+    {
+        return toothedLeaf.createBufferedImage(image, true);
+    } // end createToothedImage
+
+    @Benchmark
+    public BufferedImage createImageInPlace()
+    {
+        return leaf.createBufferedImage(image, true);
+    } // end createImageInPlace
+
+    @Benchmark
+    public BufferedImage createTexturedImage()
+    {
+        return leaf.createBufferedImage(image, texturedContext);
+    } // end createTexturedImage
+
+    @Benchmark
+    public BufferedImage drawLinear()
+    {
+        leaf.lamina.drawLinear(g2);
+        return image;
+    } // end drawLinear
+} // end GeneratorBenchmark
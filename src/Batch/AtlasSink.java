@@ -0,0 +1,298 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 pthom.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package Batch;
+
+// imports
+import Generator.PngEncoder;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Locale;
+import java.util.List;
+import java.util.TreeMap;
+
+/**
+ * Crops every leaf to its bounding box and packs the crops into large
+ * atlas pages, atlas1.png, atlas2.png, ..., instead of writing one mostly
+ * empty image per leaf. Leaves are placed on shelves: left to right along
+ * the current shelf, a new shelf below it when a leaf does not fit, and a
+ * new page when no shelf fits. Leaves of a batch all have about the same
+ * height, so shelves waste little space.
+ *
+ * Leaves are placed in index order whatever order the writer threads
+ * bring them in, so the same batch always gives the same pages. A leaf
+ * that arrives early waits as a copy of its crop until the leaves before
+ * it have been placed.
+ *
+ * Where every leaf ended up is written to atlas.csv, sorted by index, with
+ * the pixel rectangle and the matching texture coordinates.
+ *
+ * @author pthom
+ */
+public class AtlasSink implements LeafSink
+{
+    public static final String INDEX_FILE = "atlas.csv";
+
+    /**
+     * Where one leaf went.
+     */
+    private static class Entry
+    {
+        int index;
+        int page;
+        int x;
+        int y;
+        int width;
+        int height;
+    } // end Entry
+
+    /**
+     * A leaf cropped to its bounds, waiting to be placed.
+     */
+    private static class Crop
+    {
+        final int width;
+        final int height;
+        final int[] pixels;
+
+        Crop(int width, int height)
+        {
+            this.width = width;
+            this.height = height;
+            this.pixels = new int[width * height];
+        } // end constructor
+    } // end Crop
+
+    private final BatchParameters parameters;
+    private final int pageSize;
+    private final int padding;
+    private final PngEncoder encoder;
+
+    private final List<Entry> entries = new ArrayList<>();
+
+    // crops of leaves that came before their turn, by index
+    private final TreeMap<Integer, Crop> waiting = new TreeMap<>();
+    private int nextIndex;
+
+    // page being filled, null before the first leaf
+    private BufferedImage page;
+    private int[] pagePixels;
+    private int pageCount = 0;
+
+    // shelf being filled
+    private int shelfX;
+    private int shelfY;
+    private int shelfHeight;
+
+    public AtlasSink(BatchParameters parameters)
+    {
+        this.parameters = parameters;
+        this.pageSize = parameters.atlasPageSize;
+        this.padding = parameters.atlasPadding;
+        this.encoder = new PngEncoder(parameters.deflateLevel);
+        this.encoder.setLossyReduction(parameters.lossyColorReduction);
+        this.nextIndex = parameters.startIndex;
+    } // end constructor
+
+    @Override
+    public boolean needsEncoding()
+    {
+        return false;
+    } // end needsEncoding
+
+    @Override
+    public void write(LeafResult result) throws IOException
+    {
+        Rectangle bounds = result.leaf.getLeafBounds();
+        if (bounds.width > pageSize || bounds.height > pageSize)
+        {
+            throw new IOException("Leaf " + (result.index + 1) + " is "
+                    + bounds.width + "x" + bounds.height
+                    + ", larger than an atlas page of " + pageSize);
+        } // end if too large
+
+        // copy the crop row by row, both images are int ARGB
+        Crop crop = new Crop(bounds.width, bounds.height);
+        BufferedImage image = result.image;
+        int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        int imageWidth = image.getWidth();
+        for (int row = 0; row < bounds.height; row++)
+        {
+            System.arraycopy(
+                    pixels, (bounds.y + row) * imageWidth + bounds.x,
+                    crop.pixels, row * bounds.width,
+                    bounds.width);
+        } // end for rows
+
+        synchronized (this)
+        {
+            waiting.put(result.index, crop);
+
+            // place every leaf whose turn has come
+            while (!waiting.isEmpty() && waiting.firstKey() == nextIndex)
+            {
+                add(nextIndex, waiting.pollFirstEntry().getValue());
+                nextIndex++;
+            } // end while next leaf is here
+        } // end synchronized
+    } // end write
+
+    /**
+     * Places a leaf on the current shelf and copies it into the page.
+     * @param index index of the leaf
+     * @param crop the leaf cropped to its bounds
+     * @throws IOException if a full page could not be written
+     */
+    private void add(int index, Crop crop) throws IOException
+    {
+        place(crop.width, crop.height);
+        for (int row = 0; row < crop.height; row++)
+        {
+            System.arraycopy(
+                    crop.pixels, row * crop.width,
+                    pagePixels, (shelfY + row) * pageSize + shelfX,
+                    crop.width);
+        } // end for rows
+
+        Entry entry = new Entry();
+        entry.index = index;
+        entry.page = pageCount;
+        entry.x = shelfX;
+        entry.y = shelfY;
+        entry.width = crop.width;
+        entry.height = crop.height;
+        entries.add(entry);
+
+        shelfX += crop.width + padding;
+        shelfHeight = Math.max(shelfHeight, crop.height);
+    } // end add
+
+    /**
+     * Moves shelfX and shelfY to a free spot of the given size, starting a
+     * new shelf or a new page if needed.
+     * @param width width of the leaf
+     * @param height height of the leaf
+     * @throws IOException if the full page could not be written
+     */
+    private void place(int width, int height) throws IOException
+    {
+        if (page != null && shelfX + width > pageSize)
+        {
+            // next shelf
+            shelfX = 0;
+            shelfY += shelfHeight + padding;
+            shelfHeight = 0;
+        } // end if shelf full
+
+        if (page == null || shelfY + height > pageSize)
+        {
+            flushPage();
+            page = new BufferedImage(pageSize, pageSize,
+                    BufferedImage.TYPE_INT_ARGB);
+            pagePixels = ((DataBufferInt) page.getRaster().getDataBuffer()).getData();
+            pageCount++;
+            shelfX = 0;
+            shelfY = 0;
+            shelfHeight = 0;
+        } // end if page full
+    } // end place
+
+    /**
+     * Writes the page being filled, if any.
+     * @throws IOException if the page could not be written
+     */
+    private void flushPage() throws IOException
+    {
+        if (page == null)
+        {
+            return;
+        } // end if no page
+
+        Files.write(getPageFile(pageCount).toPath(), encoder.encode(page));
+        page = null;
+        pagePixels = null;
+    } // end flushPage
+
+    /**
+     * Gets the file of an atlas page.
+     * @param page one-based number of the page
+     * @return file of the page in the output directory
+     */
+    public File getPageFile(int page)
+    {
+        return new File(parameters.outputDirectory, "atlas" + page + ".png");
+    } // end getPageFile
+
+    @Override
+    public synchronized void close() throws IOException
+    {
+        try
+        {
+            // leaves after a gap, for example of a cancelled batch
+            while (!waiting.isEmpty())
+            {
+                Integer index = waiting.firstKey();
+                add(index, waiting.remove(index));
+            } // end while waiting
+            flushPage();
+            writeIndex();
+        } // end try
+        finally
+        {
+            encoder.end();
+        } // end finally
+    } // end close
+
+    /**
+     * Writes atlas.csv: one line per leaf with its index, page, pixel
+     * rectangle and texture coordinates (u0, v0) - (u1, v1), v going down.
+     * @throws IOException if the index could not be written
+     */
+    private void writeIndex() throws IOException
+    {
+        entries.sort(Comparator.comparingInt(e -> e.index));
+        File file = new File(parameters.outputDirectory, INDEX_FILE);
+        try (Writer out = Files.newBufferedWriter(file.toPath(),
+                StandardCharsets.UTF_8))
+        {
+            out.write("leaf,page,x,y,width,height,u0,v0,u1,v1\n");
+            double scale = 1.0 / pageSize;
+            for (Entry e : entries)
+            {
+                out.write(String.format(Locale.ROOT,
+                        "%d,atlas%d.png,%d,%d,%d,%d,%.6f,%.6f,%.6f,%.6f\n",
+                        e.index + 1, e.page, e.x, e.y, e.width, e.height,
+                        e.x * scale, e.y * scale,
+                        (e.x + e.width) * scale, (e.y + e.height) * scale));
+            } // end for entries
+        } // end try
+    } // end writeIndex
+} // end AtlasSink
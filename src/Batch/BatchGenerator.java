@@ -0,0 +1,282 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 pthom.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package Batch;
+
+// imports
+import Generator.Generator;
+import Generator.GeometryCache;
+import java.io.File;
+import java.io.IOException;
+import java.util.BitSet;
+
+/**
+ * Headless batch engine. Generates, renders and saves a batch of leaves on
+ * worker threads without needing the GUI, see LeafPipeline.
+ *
+ * @author pthom
+ */
+public class BatchGenerator
+{
+    /**
+     * Receives progress updates while a batch runs. Called from the worker
+     * threads, so implementations must be thread safe.
+     */
+    public interface ProgressListener
+    {
+        void leafCompleted(int completed, int total);
+    } // end ProgressListener
+
+    private final BatchParameters parameters;
+    private final BatchStats stats = new BatchStats();
+    private final GeometryCache geometryCache;  // null when not cached
+    private volatile LeafPipeline pipeline;     // running, or null
+    private volatile boolean cancelled;
+
+    /**
+     * Constructor.
+     * @param parameters parameters of the batch
+     */
+    public BatchGenerator(BatchParameters parameters)
+    {
+        this.parameters = parameters;
+        this.geometryCache = parameters.geometryCacheSize > 0
+                ? new GeometryCache(parameters.geometryCacheSize)
+                : null;
+    } // end constructor
+
+    public BatchParameters getParameters()
+    {
+        return parameters;
+    } // end getParameters
+
+    /**
+     * Gets the cache the leaves of this batch share their geometry through.
+     * @return cache of the batch, null if caching is off
+     */
+    public GeometryCache getGeometryCache()
+    {
+        return geometryCache;
+    } // end getGeometryCache
+
+    /**
+     * Gets the counters of the batch. They are reset when a run starts and
+     * can be read from any thread while it runs.
+     * @return stats of the current or last run
+     */
+    public BatchStats getStats()
+    {
+        return stats;
+    } // end getStats
+
+    /**
+     * Picks the parameters of one leaf of the batch, as a block of one, so
+     * it is the same leaf the pipeline samples. The same seed and index
+     * always give the same leaf.
+     * @param index index of the leaf within the batch
+     * @return parameters of the leaf
+     */
+    public LeafParameters sampleLeaf(int index)
+    {
+        ParameterBlock block = new ParameterBlock(1, parameters.veinCount);
+        block.fill(parameters, index, 1);
+        return block.toLeafParameters(parameters, 0);
+    } // end sampleLeaf
+
+    /**
+     * Samples a block of consecutive leaves of the batch at once. Each leaf
+     * is the same as sampleLeaf(index) gives.
+     * @param block block to fill, reused between calls
+     * @param firstIndex index of the first leaf
+     * @param count number of leaves, at most block.capacity
+     */
+    public void sampleBlock(ParameterBlock block, int firstIndex, int count)
+    {
+        block.fill(parameters, firstIndex, count);
+    } // end sampleBlock
+
+    /**
+     * Creates one leaf of the batch, for example to regenerate a single
+     * leaf without running the batch again.
+     * @param index index of the leaf within the batch
+     * @return generated leaf
+     */
+    public Generator createLeaf(int index)
+    {
+        return sampleLeaf(index).createGenerator(geometryCache);
+    } // end createLeaf
+
+    /**
+     * Gets the parameters of the leaf without any random variation, as used
+     * by the preview.
+     * @return parameters of the nominal leaf
+     */
+    public LeafParameters nominalLeaf()
+    {
+        ParameterBlock block = new ParameterBlock(1, parameters.veinCount);
+        block.fillNominal(parameters);
+        return block.toLeafParameters(parameters, 0);
+    } // end nominalLeaf
+
+    /**
+     * Creates the sink that the output mode of the batch writes to.
+     * @return new sink
+     * @throws IOException if the output mode is unknown
+     */
+    public LeafSink createSink() throws IOException
+    {
+        switch (parameters.output)
+        {
+            case "files":
+                return new FileSink(parameters);
+            case "atlas":
+                return new AtlasSink(parameters);
+            case "npy":
+                return new NpySink(parameters);
+            case "tar":
+                return new TarShardSink(parameters);
+            case "svg":
+                return new SvgSink(parameters);
+            default:
+                throw new IOException("Unknown output " + parameters.output);
+        } // end switch output
+    } // end createSink
+
+    /**
+     * Tells whether an output can add to an earlier, unfinished run of the
+     * same batch instead of starting over. Asked before any sink is made,
+     * since making one may already truncate what an earlier run wrote.
+     * @param output one of the outputs createSink knows
+     * @return true for outputs that keep every leaf in a file of its own
+     */
+    public static boolean isResumable(String output)
+    {
+        switch (output)
+        {
+            case "files":
+            case "svg":
+                return true;
+            default:
+                return false;
+        } // end switch output
+    } // end isResumable
+
+    /**
+     * Generates the whole batch into the output directory, blocking until
+     * every leaf has been written or the batch is cancelled. The batch is
+     * saved to batch.properties and every written leaf to the manifest, so
+     * with BatchParameters.resume set a later run only makes the leaves that
+     * are not in the manifest yet.
+     * @param listener receives progress updates, may be null
+     * @return number of leaves written by this run
+     * @throws IOException if a leaf could not be written
+     * @throws InterruptedException if interrupted while waiting for workers
+     */
+    public int run(ProgressListener listener)
+            throws IOException, InterruptedException
+    {
+        if (parameters.resume && !isResumable(parameters.output))
+        {
+            throw new IOException("Output " + parameters.output
+                    + " can not be resumed, start it over instead");
+        } // end if not resumable
+
+        File directory = parameters.outputDirectory;
+        if (!directory.isDirectory() && !directory.mkdirs())
+        {
+            throw new IOException("Could not create output directory "
+                    + directory);
+        } // end if directory missing
+
+        BitSet done = parameters.resume
+                ? BatchManifest.load(directory, parameters.startIndex, parameters.count)
+                : new BitSet();
+        LeafSink sink = createSink();
+
+        // remember the batch so any leaf can be made again later
+        parameters.store(new File(directory, BatchMain.BATCH_FILE));
+
+        try (BatchManifest manifest = new BatchManifest(directory, parameters.resume))
+        {
+            return run(new LeafPipeline(this, sink, manifest, done), listener);
+        } // end try
+    } // end run
+
+    /**
+     * Generates the whole batch into the given sink, blocking until every
+     * leaf has been written.
+     * @param sink where the finished leaves go, closed at the end
+     * @param listener receives progress updates, may be null
+     * @return number of leaves written
+     * @throws IOException if a leaf could not be written
+     * @throws InterruptedException if interrupted while waiting for workers
+     */
+    public int run(LeafSink sink, ProgressListener listener)
+            throws IOException, InterruptedException
+    {
+        return run(new LeafPipeline(this, sink, null, new BitSet()), listener);
+    } // end run
+
+    private int run(LeafPipeline leafPipeline, ProgressListener listener)
+            throws IOException, InterruptedException
+    {
+        pipeline = leafPipeline;
+        try
+        {
+            // a cancel that came before the pipeline was published
+            if (cancelled)
+            {
+                leafPipeline.cancel();
+            } // end if cancelled early
+            return leafPipeline.run(listener);
+        } // end try
+        finally
+        {
+            pipeline = null;
+        } // end finally
+    } // end run
+
+    /**
+     * Stops the running batch as soon as possible, from any thread. Leaves
+     * already written stay in the manifest, so the batch can be resumed.
+     * A batch cancelled before it started stops as soon as run is called,
+     * and so does any later run of this generator.
+     */
+    public void cancel()
+    {
+        cancelled = true;
+        LeafPipeline running = pipeline;
+        if (running != null)
+        {
+            running.cancel();
+        } // end if running
+    } // end cancel
+
+    /**
+     * @return whether this batch was cancelled
+     */
+    public boolean isCancelled()
+    {
+        return cancelled;
+    } // end isCancelled
+} // end BatchGenerator
@@ -0,0 +1,338 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 pthom.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package Batch;
+
+// imports
+import Generator.MarginStyle;
+import Generator.Palette;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Command line entry point for generating batches of leaves without the GUI.
+ *
+ * Example:
+ * java -cp Leaf_Generator.jar Batch.BatchMain --count 1000 --out leaves
+ *
+ * The same runs from Leaf_Generator-core.jar, which leaves out the GUI, or
+ * from the leafgen script that "ant core-cds" writes next to it. That one
+ * starts with a class data sharing archive and shows the first leaf in
+ * well under a second.
+ *
+ * @author pthom
+ */
+public class BatchMain
+{
+    // written into the output directory, can be given back with --config
+    public static final String BATCH_FILE = "batch.properties";
+
+    /**
+     * @param args the command line arguments, see printUsage
+     */
+    public static void main(String[] args)
+    {
+        // nothing is shown, so never start a toolkit or connect to a display
+        if (System.getProperty("java.awt.headless") == null)
+        {
+            System.setProperty("java.awt.headless", "true");
+        } // end if not set
+        BatchParameters parameters;
+        try
+        {
+            parameters = parseArguments(args);
+        } // end try
+        catch (IllegalArgumentException ex)
+        {
+            System.err.println(ex.getMessage());
+            printUsage();
+            System.exit(2);
+            return;
+        } // end catch
+
+        long start = System.nanoTime();
+        try
+        {
+            BatchGenerator generator = new BatchGenerator(parameters);
+            int written = generator.run(null);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("Wrote %d leaves to %s in %.2f s (%.1f leaves/s), seed %d%n",
+                    written, parameters.outputDirectory, seconds,
+                    written / seconds, parameters.seed);
+            System.out.print(generator.getStats().getSummary());
+            if (generator.getGeometryCache() != null)
+            {
+                System.out.println(generator.getGeometryCache());
+            } // end if cache
+        } // end try
+        catch (IOException | InterruptedException ex)
+        {
+            System.err.println("Batch failed: " + ex.getMessage());
+            System.exit(1);
+        } // end catch
+    } // end main
+
+    /**
+     * Turns "--name value" pairs into batch parameters.
+     * @param args the command line arguments
+     * @return parsed parameters
+     */
+    public static BatchParameters parseArguments(String[] args)
+    {
+        BatchParameters p = new BatchParameters();
+
+        for (int i = 0; i < args.length; i++)
+        {
+            String name = args[i];
+            if (i + 1 >= args.length)
+            {
+                throw new IllegalArgumentException("Missing value for " + name);
+            } // end if no value
+            String value = args[++i];
+
+            try
+            {
+                switch (name)
+                {
+                    case "--config":
+                        try
+                        {
+                            p.load(new File(value));
+                        } // end try
+                        catch (IOException ex)
+                        {
+                            throw new IllegalArgumentException(ex.getMessage());
+                        } // end catch
+                        break;
+                    case "--resume":
+                        try
+                        {
+                            p.outputDirectory = new File(value);
+                            p.load(new File(value, BATCH_FILE));
+                            p.resume = true;
+                        } // end try
+                        catch (IOException ex)
+                        {
+                            throw new IllegalArgumentException(ex.getMessage());
+                        } // end catch
+                        break;
+                    case "--seed":
+                        p.seed = Long.parseLong(value);
+                        break;
+                    case "--start":
+                        p.startIndex = Integer.parseInt(value);
+                        break;
+                    case "--geometry-cache":
+                        p.geometryCacheSize = Integer.parseInt(value);
+                        break;
+                    case "--count":
+                        p.count = Integer.parseInt(value);
+                        break;
+                    case "--threads":
+                        p.threads = Integer.parseInt(value);
+                        break;
+                    case "--render-threads":
+                        p.renderThreads = Integer.parseInt(value);
+                        break;
+                    case "--encode-threads":
+                        p.encoderThreads = Integer.parseInt(value);
+                        break;
+                    case "--write-threads":
+                        p.writerThreads = Integer.parseInt(value);
+                        break;
+                    case "--queue":
+                        p.queueCapacity = Integer.parseInt(value);
+                        break;
+                    case "--out":
+                        p.outputDirectory = new File(value);
+                        break;
+                    case "--output":
+                        p.output = value;
+                        break;
+                    case "--shard-mb":
+                        p.shardBytes = Long.parseLong(value) << 20;
+                        break;
+                    case "--atlas-size":
+                        p.atlasPageSize = Integer.parseInt(value);
+                        break;
+                    case "--format":
+                        p.format = value;
+                        break;
+                    case "--encoder":
+                        p.encoder = value;
+                        break;
+                    case "--deflate":
+                        p.deflateLevel = Integer.parseInt(value);
+                        break;
+                    case "--lossy":
+                        p.lossyColorReduction = BatchParameters.parseBoolean(value);
+                        break;
+                    case "--width":
+                        p.width = Integer.parseInt(value);
+                        break;
+                    case "--height":
+                        p.height = Integer.parseInt(value);
+                        break;
+                    case "--midrib-length":
+                        p.midribLengthProportion = Double.parseDouble(value);
+                        break;
+                    case "--midrib-length-var":
+                        p.midribLengthBounds = parseVariance(value);
+                        break;
+                    case "--midrib-offset":
+                        p.midribOffsetProportion = Double.parseDouble(value);
+                        break;
+                    case "--midrib-offset-var":
+                        p.midribOffsetBounds = parseVariance(value);
+                        break;
+                    case "--veins":
+                        p.veinCount = Integer.parseInt(value);
+                        break;
+                    case "--vein-angle":
+                        p.veinAngle = Double.parseDouble(value);
+                        break;
+                    case "--vein-angle-var":
+                        p.veinAngleBounds = parseVariance(value);
+                        break;
+                    case "--vein-length-var":
+                        p.veinLengthBounds = parseVariance(value);
+                        break;
+                    case "--lamina":
+                        p.laminaArgs = parseDoubles(value, 3);
+                        break;
+                    case "--margin":
+                        p.marginStyle = MarginStyle.forName(value).name;
+                        break;
+                    case "--palette":
+                        p.palette = Palette.parse(value);
+                        break;
+                    case "--texture":
+                        p.textureStrength = Double.parseDouble(value);
+                        break;
+                    case "--texture-count":
+                        p.textureCount = Integer.parseInt(value);
+                        break;
+                    case "--texture-size":
+                        p.textureSize = Integer.parseInt(value);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option " + name);
+                } // end switch
+            } // end try
+            catch (NumberFormatException ex)
+            {
+                throw new IllegalArgumentException(
+                        "Bad value for " + name + ": " + value);
+            } // end catch
+        } // end for arguments
+
+        // nothing is built until the batch runs, check the numbers before
+        p.check();
+        return p;
+    } // end parseArguments
+
+    /**
+     * Parses "min,max" variances like the GUI's fields into multipliers.
+     * @param value string such as "-0.1,0.1"
+     * @return {1.0 + min, 1.0 + max}
+     */
+    private static double[] parseVariance(String value)
+    {
+        double[] variance = parseDoubles(value, 2);
+        return new double[] {1.0 + variance[0], 1.0 + variance[1]};
+    } // end parseVariance
+
+    /**
+     * Parses a comma separated list of doubles.
+     * @param value comma separated doubles
+     * @param expected how many doubles are expected
+     * @return parsed doubles
+     */
+    private static double[] parseDoubles(String value, int expected)
+    {
+        String[] parts = value.split(",");
+        if (parts.length != expected)
+        {
+            throw new IllegalArgumentException("Expected " + expected
+                    + " comma separated values but got " + value);
+        } // end if wrong count
+
+        double[] output = new double[expected];
+        for (int i = 0; i < expected; i++)
+        {
+            output[i] = Double.parseDouble(parts[i].trim());
+        } // end for parts
+        return output;
+    } // end parseDoubles
+
+    /**
+     * Prints the available options to sys err.
+     */
+    private static void printUsage()
+    {
+        System.err.println("Usage: java Batch.BatchMain [options]\n"
+                + "  --config FILE             load a batch.properties written by an earlier batch\n"
+                + "  --resume DIR              finish an unfinished batch in DIR, skipping\n"
+                + "                            the leaves listed in its manifest.txt\n"
+                + "  --seed N                  seed of the batch (default: random)\n"
+                + "  --start N                 index of the first leaf, 0 is saved1 (default 0)\n"
+                + "  --count N                 number of leaves (default 1)\n"
+                + "  --geometry-cache N        reuse the geometry of up to N leaves that\n"
+                + "                            differ by less than a pixel (default off)\n"
+                + "  --threads N               worker threads (default: cores)\n"
+                + "  --render-threads N        render stage threads (default: threads)\n"
+                + "  --encode-threads N        encode stage threads (default: threads)\n"
+                + "  --write-threads N         write stage threads (default 2)\n"
+                + "  --queue N                 leaves waiting between stages (default 4*threads)\n"
+                + "  --out DIR                 output directory (default .)\n"
+                + "  --output MODE             files: one file per leaf, atlas: cropped leaves\n"
+                + "                            packed into pages with a uv index, npy: all\n"
+                + "                            masks in one masks.npy, tar: leaves and their\n"
+                + "                            parameters in indexed tar shards, svg: one\n"
+                + "                            vector file per leaf (default files)\n"
+                + "  --shard-mb N              size a tar shard may grow to (default 1024)\n"
+                + "  --atlas-size N            width and height of an atlas page (default 2048)\n"
+                + "  --format NAME             image format (default png)\n"
+                + "  --encoder NAME            builtin or imageio (default builtin)\n"
+                + "  --deflate N               deflate level 0-9 of builtin png (default 6)\n"
+                + "  --lossy true|false        let builtin png drop color bits (default false)\n"
+                + "  --width N --height N      image size (default 1280x720)\n"
+                + "  --midrib-length P         midrib length proportion (0.7)\n"
+                + "  --midrib-length-var A,B   midrib length variance (-0.1,0.1)\n"
+                + "  --midrib-offset P         midrib offset proportion (0.1)\n"
+                + "  --midrib-offset-var A,B   midrib offset variance (-0.1,0.1)\n"
+                + "  --veins N                 primary veins per side (4)\n"
+                + "  --vein-angle DEG          primary vein angle (45)\n"
+                + "  --vein-angle-var A,B      vein angle variance (-0.1,0.1)\n"
+                + "  --vein-length-var A,B     vein length variance (0.0,0.01)\n"
+                + "  --lamina B,R,F            breadth, end of rise, start of fall (0.2,0.2,0.6)\n"
+                + "  --margin STYLE            smooth, fine-toothed, saw-toothed or dentate\n"
+                + "                            (default smooth)\n"
+                + "  --palette L,M,V,B         hex colors of lamina, midrib, veins and\n"
+                + "                            background, e.g. #448f30,#0f4800,#0f4800,#ffffff\n"
+                + "  --texture S               mottle, tint and shade the lamina, S is the\n"
+                + "                            strength, 1 is the default look (default 0, flat)\n"
+                + "  --texture-count N         noise textures shared by the batch (default 8)\n"
+                + "  --texture-size N          size of a texture, a power of two (default 512)");
+    } // end printUsage
+} // end BatchMain
@@ -0,0 +1,138 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 pthom.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package Batch;
+
+// imports
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+
+/**
+ * Append-only record of the leaves of a batch that have been written,
+ * manifest.txt in the output directory. Every line is the index of one leaf
+ * followed by its parameters, and is flushed as soon as the leaf is
+ * written, so after a crash or a cancel the manifest lists exactly the
+ * leaves that are on disk (a torn last line is ignored). Resuming reads
+ * only this file, never the output directory.
+ *
+ * @author pthom
+ */
+public class BatchManifest implements Closeable
+{
+    public static final String FILE = "manifest.txt";
+
+    private final Writer out;
+
+    /**
+     * Opens the manifest of an output directory.
+     * @param directory output directory of the batch
+     * @param append true to add to an existing manifest, false to start a
+     * new one
+     * @throws IOException if the manifest could not be opened
+     */
+    public BatchManifest(File directory, boolean append) throws IOException
+    {
+        out = Files.newBufferedWriter(new File(directory, FILE).toPath(),
+                StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE,
+                append ? StandardOpenOption.APPEND
+                        : StandardOpenOption.TRUNCATE_EXISTING);
+    } // end constructor
+
+    /**
+     * Reads which leaves of a batch the manifest of a directory lists.
+     * @param directory output directory of the batch
+     * @param startIndex index of the first leaf of the batch
+     * @param count number of leaves in the batch
+     * @return bit i set if leaf startIndex + i is done, empty if there is no
+     * manifest
+     * @throws IOException if the manifest could not be read
+     */
+    public static BitSet load(File directory, int startIndex, int count)
+            throws IOException
+    {
+        BitSet done = new BitSet(count);
+        File file = new File(directory, FILE);
+        if (!file.isFile())
+        {
+            return done;
+        } // end if no manifest
+
+        try (BufferedReader in = Files.newBufferedReader(file.toPath(),
+                StandardCharsets.UTF_8))
+        {
+            String line;
+            while ((line = in.readLine()) != null)
+            {
+                // complete lines end with the lamina, anything else was torn
+                int space = line.indexOf(' ');
+                if (space <= 0 || !line.contains(" laminaArgs="))
+                {
+                    continue;
+                } // end if not a complete line
+
+                try
+                {
+                    int slot = Integer.parseInt(line.substring(0, space)) - startIndex;
+                    if (slot >= 0 && slot < count)
+                    {
+                        done.set(slot);
+                    } // end if part of the batch
+                } // end try
+                catch (NumberFormatException ex)
+                {
+                    // torn line
+                } // end catch
+            } // end while lines
+        } // end try
+        return done;
+    } // end load
+
+    /**
+     * Adds a written leaf.
+     * @param result leaf that has been written
+     * @throws IOException if the manifest could not be written
+     */
+    public synchronized void record(LeafResult result) throws IOException
+    {
+        out.write(Integer.toString(result.index));
+        out.write(' ');
+        out.write(result.parameters.toText().trim().replace('\n', ' '));
+        out.write('\n');
+        out.flush();
+    } // end record
+
+    @Override
+    public synchronized void close() throws IOException
+    {
+        out.close();
+    } // end close
+} // end BatchManifest
@@ -0,0 +1,384 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 pthom.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package Batch;
+
+// imports
+import Generator.MarginStyle;
+import Generator.NoiseTextures;
+import Generator.Palette;
+import Generator.RenderContext;
+import Generator.SplitMix64;
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Properties;
+
+/**
+ * Holds everything needed to generate a batch of leaves. The defaults match
+ * the example values of the pinnate tab in the GUI.
+ *
+ * All bounds are stored as multipliers (1.0 + variance), exactly like the
+ * GUI turns its "min"/"max" variance fields into multipliers.
+ *
+ * @author pthom
+ */
+public class BatchParameters
+{
+    // image
+    public int width = 1280;
+    public int height = 720;
+
+    // midrib
+    public double midribLengthProportion = 0.7;
+    public double[] midribLengthBounds = {0.9, 1.1};
+    public double midribOffsetProportion = 0.1;
+    public double[] midribOffsetBounds = {0.9, 1.1};
+
+    // primary veins
+    public String primaryVeinsStyle = "pinnate";
+    public int veinCount = 4;
+    public double veinAngle = 45.0;
+    public double[] veinAngleBounds = {0.9, 1.1};
+    public double[] veinLengthBounds = {1.0, 1.01};
+
+    // lamina
+    public String laminaStyle = "linear";
+    public double[] laminaArgs = {0.2, 0.2, 0.6};
+    public String marginStyle = "smooth";   // see MarginStyle
+
+    // colors, null for the GenColor colors
+    public Palette palette = null;
+
+    // lamina texture, 0 for a flat lamina
+    public double textureStrength = 0;
+    public int textureCount = 8;            // textures shared by the batch
+    public int textureSize = 512;           // width and height of a texture
+
+    // leaves whose geometry is kept for similar leaves, 0 for none
+    public int geometryCacheSize = 0;
+
+    // generation options
+    public long seed = SplitMix64.mix64(System.nanoTime());
+    public int startIndex = 0;              // index of the first leaf
+    public int count = 1;
+    public boolean resume = false;          // skip leaves in the manifest
+    public File outputDirectory = new File(".");
+    public String format = "png";
+    public String output = "files";         // "files", "atlas", "npy", "tar" or "svg"
+    public int atlasPageSize = 2048;        // width and height of a page
+    public int atlasPadding = 2;            // pixels between two leaves
+    public long shardBytes = 1L << 30;      // size a tar shard may grow to
+    public String encoder = "builtin";      // "builtin" or "imageio"
+    public int deflateLevel = 6;
+    public boolean lossyColorReduction = false;
+    public int threads = Runtime.getRuntime().availableProcessors();
+
+    // pipeline, 0 means "use threads"
+    public int generatorThreads = 1;
+    public int renderThreads = 0;
+    public int encoderThreads = 0;
+    public int writerThreads = 2;
+    public int queueCapacity = 0;
+
+    public int getRenderThreads()
+    {
+        return renderThreads > 0 ? renderThreads : threads;
+    } // end getRenderThreads
+
+    public int getEncoderThreads()
+    {
+        return encoderThreads > 0 ? encoderThreads : threads;
+    } // end getEncoderThreads
+
+    /**
+     * Gets the colors and antialiasing every leaf of the batch is rendered
+     * with. Made once per batch and shared by the render threads.
+     * @return render context of the batch
+     */
+    public RenderContext getRenderContext()
+    {
+        RenderContext context = new RenderContext(
+                palette != null ? palette : Palette.defaults(), true);
+        if (textureStrength > 0)
+        {
+            // built on the first call, then taken from the shared cache
+            context = context.withTextures(
+                    NoiseTextures.get(seed, textureCount, textureSize),
+                    textureStrength);
+        } // end if textured
+        return context;
+    } // end getRenderContext
+
+    /**
+     * Gets how many leaves may wait between two stages of the pipeline.
+     * @return capacity of every queue of the pipeline
+     */
+    public int getQueueCapacity()
+    {
+        return queueCapacity > 0 ? queueCapacity : 4 * Math.max(1, threads);
+    } // end getQueueCapacity
+
+    /**
+     * Creates the primary vein parameters in the form the Generator expects:
+     * {number of veins, angle, length 1, length 2, ...}. Every vein starts
+     * at a length of 1.0 before being varied, just like the GUI does.
+     * @return primary vein parameters before any random variation
+     */
+    public double[] getPrimaryVeinParameters()
+    {
+        double[] pVParameters = new double[2 + veinCount];
+        pVParameters[0] = veinCount;
+        pVParameters[1] = veinAngle;
+
+        for (int i = 2; i < pVParameters.length; i++)
+        {
+            pVParameters[i] = 1.0;
+        } // end for loop
+
+        return pVParameters;
+    } // end getPrimaryVeinParameters
+
+    /**
+     * Checks that the numbers of the batch make sense before anything is
+     * built from them: sizes and counts that are not negative, at least one
+     * leaf and thread, a deflate level Deflater accepts and a
+     * texture shape NoiseTextures can build.
+     * @throws IllegalArgumentException naming the first bad value
+     */
+    public void check()
+    {
+        checkRange("count", count, 1, Integer.MAX_VALUE);
+        checkRange("startIndex", startIndex, 0, Integer.MAX_VALUE);
+        checkRange("width", width, 1, Integer.MAX_VALUE);
+        checkRange("height", height, 1, Integer.MAX_VALUE);
+        checkRange("veinCount", veinCount, 0, Integer.MAX_VALUE);
+        checkRange("deflateLevel", deflateLevel, 0, 9);
+        checkRange("threads", threads, 1, Integer.MAX_VALUE);
+        checkRange("generatorThreads", generatorThreads, 1, Integer.MAX_VALUE);
+        checkRange("renderThreads", renderThreads, 0, Integer.MAX_VALUE);
+        checkRange("encoderThreads", encoderThreads, 0, Integer.MAX_VALUE);
+        checkRange("writerThreads", writerThreads, 1, Integer.MAX_VALUE);
+        checkRange("queueCapacity", queueCapacity, 0, Integer.MAX_VALUE);
+        checkRange("geometryCacheSize", geometryCacheSize, 0, Integer.MAX_VALUE);
+        NoiseTextures.checkShape(textureCount, textureSize);
+    } // end check
+
+    private static void checkRange(String name, int value, int min, int max)
+    {
+        if (value < min || value > max)
+        {
+            throw new IllegalArgumentException(name + " must be "
+                    + (max == Integer.MAX_VALUE
+                            ? "at least " + min
+                            : "from " + min + " to " + max)
+                    + ", not " + value);
+        } // end if out of range
+    } // end checkRange
+
+    /**
+     * Saves everything that decides what the leaves look like, how they
+     * are encoded and stored and which leaves are in the batch, so any
+     * leaf can be made again from (this file, its index) and an unfinished
+     * batch can be resumed.
+     * @param file file to write
+     * @throws IOException if the file cannot be written
+     */
+    public void store(File file) throws IOException
+    {
+        Properties properties = new Properties();
+        properties.setProperty("seed", Long.toString(seed));
+        properties.setProperty("width", Integer.toString(width));
+        properties.setProperty("height", Integer.toString(height));
+        properties.setProperty("midribLengthProportion", Double.toString(midribLengthProportion));
+        properties.setProperty("midribLengthBounds", join(midribLengthBounds));
+        properties.setProperty("midribOffsetProportion", Double.toString(midribOffsetProportion));
+        properties.setProperty("midribOffsetBounds", join(midribOffsetBounds));
+        properties.setProperty("primaryVeinsStyle", primaryVeinsStyle);
+        properties.setProperty("veinCount", Integer.toString(veinCount));
+        properties.setProperty("veinAngle", Double.toString(veinAngle));
+        properties.setProperty("veinAngleBounds", join(veinAngleBounds));
+        properties.setProperty("veinLengthBounds", join(veinLengthBounds));
+        properties.setProperty("laminaStyle", laminaStyle);
+        properties.setProperty("laminaArgs", join(laminaArgs));
+        properties.setProperty("marginStyle", marginStyle);
+        if (palette != null)
+        {
+            properties.setProperty("palette", palette.toString());
+        } // end if palette
+        properties.setProperty("textureStrength", Double.toString(textureStrength));
+        properties.setProperty("textureCount", Integer.toString(textureCount));
+        properties.setProperty("textureSize", Integer.toString(textureSize));
+        properties.setProperty("geometryCacheSize", Integer.toString(geometryCacheSize));
+        properties.setProperty("format", format);
+        properties.setProperty("output", output);
+        properties.setProperty("atlasPageSize", Integer.toString(atlasPageSize));
+        properties.setProperty("atlasPadding", Integer.toString(atlasPadding));
+        properties.setProperty("shardBytes", Long.toString(shardBytes));
+        properties.setProperty("encoder", encoder);
+        properties.setProperty("deflateLevel", Integer.toString(deflateLevel));
+        properties.setProperty("lossyColorReduction", Boolean.toString(lossyColorReduction));
+        properties.setProperty("startIndex", Integer.toString(startIndex));
+        properties.setProperty("count", Integer.toString(count));
+
+        try (Writer out = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8))
+        {
+            properties.store(out, "Leaf Generator batch");
+        } // end try
+    } // end store
+
+    /**
+     * Loads the values saved by store, leaving everything else as it is.
+     * @param file file to read
+     * @throws IOException if the file cannot be read
+     */
+    public void load(File file) throws IOException
+    {
+        Properties properties = new Properties();
+        try (Reader in = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8))
+        {
+            properties.load(in);
+        } // end try
+
+        try
+        {
+            seed = Long.parseLong(properties.getProperty("seed", Long.toString(seed)));
+            width = Integer.parseInt(properties.getProperty("width", Integer.toString(width)));
+            height = Integer.parseInt(properties.getProperty("height", Integer.toString(height)));
+            midribLengthProportion = Double.parseDouble(properties.getProperty(
+                    "midribLengthProportion", Double.toString(midribLengthProportion)));
+            midribLengthBounds = split(properties.getProperty(
+                    "midribLengthBounds", join(midribLengthBounds)));
+            midribOffsetProportion = Double.parseDouble(properties.getProperty(
+                    "midribOffsetProportion", Double.toString(midribOffsetProportion)));
+            midribOffsetBounds = split(properties.getProperty(
+                    "midribOffsetBounds", join(midribOffsetBounds)));
+            primaryVeinsStyle = properties.getProperty("primaryVeinsStyle", primaryVeinsStyle);
+            veinCount = Integer.parseInt(properties.getProperty(
+                    "veinCount", Integer.toString(veinCount)));
+            veinAngle = Double.parseDouble(properties.getProperty(
+                    "veinAngle", Double.toString(veinAngle)));
+            veinAngleBounds = split(properties.getProperty(
+                    "veinAngleBounds", join(veinAngleBounds)));
+            veinLengthBounds = split(properties.getProperty(
+                    "veinLengthBounds", join(veinLengthBounds)));
+            laminaStyle = properties.getProperty("laminaStyle", laminaStyle);
+            laminaArgs = split(properties.getProperty("laminaArgs", join(laminaArgs)));
+            marginStyle = MarginStyle.forName(properties.getProperty(
+                    "marginStyle", marginStyle)).name;
+            String paletteText = properties.getProperty("palette");
+            if (paletteText != null)
+            {
+                palette = Palette.parse(paletteText);
+            } // end if palette
+            textureStrength = Double.parseDouble(properties.getProperty(
+                    "textureStrength", Double.toString(textureStrength)));
+            textureCount = Integer.parseInt(properties.getProperty(
+                    "textureCount", Integer.toString(textureCount)));
+            textureSize = Integer.parseInt(properties.getProperty(
+                    "textureSize", Integer.toString(textureSize)));
+            geometryCacheSize = Integer.parseInt(properties.getProperty(
+                    "geometryCacheSize", Integer.toString(geometryCacheSize)));
+            format = properties.getProperty("format", format);
+            output = properties.getProperty("output", output);
+            atlasPageSize = Integer.parseInt(properties.getProperty(
+                    "atlasPageSize", Integer.toString(atlasPageSize)));
+            atlasPadding = Integer.parseInt(properties.getProperty(
+                    "atlasPadding", Integer.toString(atlasPadding)));
+            shardBytes = Long.parseLong(properties.getProperty(
+                    "shardBytes", Long.toString(shardBytes)));
+            encoder = properties.getProperty("encoder", encoder);
+            deflateLevel = Integer.parseInt(properties.getProperty(
+                    "deflateLevel", Integer.toString(deflateLevel)));
+            lossyColorReduction = parseBoolean(properties.getProperty(
+                    "lossyColorReduction", Boolean.toString(lossyColorReduction)));
+            startIndex = Integer.parseInt(properties.getProperty(
+                    "startIndex", Integer.toString(startIndex)));
+            count = Integer.parseInt(properties.getProperty(
+                    "count", Integer.toString(count)));
+            check();
+        } // end try
+        catch (IllegalArgumentException ex)
+        {
+            // also NumberFormatException
+            throw new IOException("Bad batch file " + file + ": " + ex.getMessage(), ex);
+        } // end catch
+    } // end load
+
+    static String join(double[] values)
+    {
+        StringBuilder out = new StringBuilder();
+        for (int i = 0; i < values.length; i++)
+        {
+            if (i > 0)
+            {
+                out.append(',');
+            } // end if not first
+            out.append(values[i]);
+        } // end for values
+        return out.toString();
+    } // end join
+
+    private static double[] split(String value)
+    {
+        String[] parts = value.split(",");
+        double[] values = new double[parts.length];
+        for (int i = 0; i < parts.length; i++)
+        {
+            values[i] = Double.parseDouble(parts[i].trim());
+        } // end for parts
+        return values;
+    } // end split
+
+    /**
+     * Parses "true" or "false", unlike Boolean.parseBoolean which reads
+     * anything else as false.
+     * @param value "true" or "false", in any case
+     * @return parsed value
+     */
+    static boolean parseBoolean(String value)
+    {
+        if ("true".equalsIgnoreCase(value))
+        {
+            return true;
+        } // end if true
+        if ("false".equalsIgnoreCase(value))
+        {
+            return false;
+        } // end if false
+        throw new IllegalArgumentException("Expected true or false but got " + value);
+    } // end parseBoolean
+
+    /**
+     * Gets the file that the leaf with the given index is saved to.
+     * @param index zero-based index of the leaf within the batch
+     * @return output file
+     */
+    public File getOutputFile(int index)
+    {
+        return new File(outputDirectory, "saved" + (index + 1) + "." + format);
+    } // end getOutputFile
+} // end BatchParameters
@@ -0,0 +1,391 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 pthom.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package Batch;
+
+// imports
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToDoubleFunction;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Counts finished leaves and times every stage of the pipeline. Recording
+ * is a few adds on striped counters, cheap enough to do for every leaf on
+ * every thread. Latencies go into log-linear histograms (four buckets per
+ * power of two, so percentiles are within about 12%).
+ *
+ * The same counters drive the progress of the GUI, the JMX bean and the
+ * summary printed at the end of a batch.
+ *
+ * @author pthom
+ */
+public class BatchStats implements BatchStatsMXBean
+{
+    public static final String OBJECT_NAME = "Leaf_Generator:type=BatchStats";
+
+    /**
+     * Timings of one stage.
+     */
+    public static class Stage
+    {
+        // 4 sub-buckets for each power of two of nanoseconds
+        private static final int SUB_BITS = 2;
+        private static final int SUB = 1 << SUB_BITS;
+
+        private final String name;
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+        private final AtomicLongArray histogram = new AtomicLongArray(64 * SUB);
+
+        Stage(String name)
+        {
+            this.name = name;
+        } // end constructor
+
+        public String getName()
+        {
+            return name;
+        } // end getName
+
+        /**
+         * Records one leaf going through this stage.
+         * @param nanos how long it took
+         */
+        public void record(long nanos)
+        {
+            nanos = Math.max(0, nanos);
+            count.increment();
+            totalNanos.add(nanos);
+            maxNanos.accumulate(nanos);
+            histogram.incrementAndGet(bucket(nanos));
+        } // end record
+
+        /**
+         * Records leaves that went through this stage together, as that
+         * many leaves that each took an equal share of the time.
+         * @param nanos how long all of them took
+         * @param leaves how many leaves there were
+         */
+        public void record(long nanos, int leaves)
+        {
+            if (leaves <= 0)
+            {
+                return;
+            } // end if none
+            long each = Math.max(0, nanos) / leaves;
+            count.add(leaves);
+            totalNanos.add(each * leaves);
+            maxNanos.accumulate(each);
+            histogram.addAndGet(bucket(each), leaves);
+        } // end record
+
+        private static int bucket(long nanos)
+        {
+            if (nanos < SUB)
+            {
+                return (int) nanos;
+            } // end if tiny
+            int bit = 63 - Long.numberOfLeadingZeros(nanos);
+            int sub = (int) (nanos >>> (bit - SUB_BITS)) & (SUB - 1);
+            return (bit - SUB_BITS + 1) * SUB + sub;
+        } // end bucket
+
+        /**
+         * @return middle of the range of nanoseconds in a bucket
+         */
+        private static double bucketMiddle(int bucket)
+        {
+            if (bucket < SUB)
+            {
+                return bucket;
+            } // end if tiny
+            int shift = bucket / SUB - 1;
+            long low = (long) (SUB + bucket % SUB) << shift;
+            return low + (1L << shift) / 2.0;
+        } // end bucketMiddle
+
+        public long getCount()
+        {
+            return count.sum();
+        } // end getCount
+
+        public double getMeanMillis()
+        {
+            long n = count.sum();
+            return n == 0 ? 0 : totalNanos.sum() / 1e6 / n;
+        } // end getMeanMillis
+
+        public double getMaxMillis()
+        {
+            return maxNanos.get() / 1e6;
+        } // end getMaxMillis
+
+        /**
+         * Estimates a percentile from the histogram.
+         * @param percentile between 0 and 100
+         * @return latency in milliseconds, 0 before the first leaf
+         */
+        public double getPercentileMillis(double percentile)
+        {
+            long[] counts = new long[histogram.length()];
+            long n = 0;
+            for (int i = 0; i < counts.length; i++)
+            {
+                counts[i] = histogram.get(i);
+                n += counts[i];
+            } // end for buckets
+            if (n == 0)
+            {
+                return 0;
+            } // end if empty
+
+            long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * n));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++)
+            {
+                seen += counts[i];
+                if (seen >= rank)
+                {
+                    return Math.min(bucketMiddle(i), maxNanos.get()) / 1e6;
+                } // end if reached
+            } // end for buckets
+            return getMaxMillis();
+        } // end getPercentileMillis
+    } // end Stage
+
+    private final Map<String, Stage> stages =
+            Collections.synchronizedMap(new LinkedHashMap<String, Stage>());
+    private final LongAdder completed = new LongAdder();
+    private volatile int total;
+    private volatile long startNanos = System.nanoTime();
+    private volatile long endNanos;
+
+    /**
+     * Resets everything for a new batch.
+     * @param total number of leaves in the batch
+     */
+    public void start(int total)
+    {
+        stages.clear();
+        completed.reset();
+        this.total = total;
+        this.startNanos = System.nanoTime();
+        this.endNanos = 0;
+    } // end start
+
+    /**
+     * Marks the batch as done, freezing the elapsed time.
+     */
+    public void finish()
+    {
+        endNanos = System.nanoTime();
+    } // end finish
+
+    /**
+     * Gets the timings of a stage, adding it the first time.
+     * @param name name of the stage
+     * @return timings of the stage
+     */
+    public Stage stage(String name)
+    {
+        synchronized (stages)
+        {
+            Stage stage = stages.get(name);
+            if (stage == null)
+            {
+                stage = new Stage(name);
+                stages.put(name, stage);
+            } // end if new
+            return stage;
+        } // end synchronized
+    } // end stage
+
+    /**
+     * Counts a leaf that has been written.
+     * @return number of leaves written so far
+     */
+    public long leafCompleted()
+    {
+        completed.increment();
+        return completed.sum();
+    } // end leafCompleted
+
+    @Override
+    public int getTotal()
+    {
+        return total;
+    } // end getTotal
+
+    @Override
+    public long getCompleted()
+    {
+        return completed.sum();
+    } // end getCompleted
+
+    @Override
+    public double getElapsedSeconds()
+    {
+        long end = endNanos != 0 ? endNanos : System.nanoTime();
+        return (end - startNanos) / 1e9;
+    } // end getElapsedSeconds
+
+    @Override
+    public double getLeavesPerSecond()
+    {
+        double seconds = getElapsedSeconds();
+        return seconds > 0 ? getCompleted() / seconds : 0;
+    } // end getLeavesPerSecond
+
+    @Override
+    public Map<String, Long> getStageCounts()
+    {
+        Map<String, Long> out = new LinkedHashMap<>();
+        for (Stage stage : getStages())
+        {
+            out.put(stage.getName(), stage.getCount());
+        } // end for stages
+        return out;
+    } // end getStageCounts
+
+    @Override
+    public Map<String, Double> getStageMeanMillis()
+    {
+        return perStage(Stage::getMeanMillis);
+    } // end getStageMeanMillis
+
+    @Override
+    public Map<String, Double> getStageP50Millis()
+    {
+        return perStage(stage -> stage.getPercentileMillis(50));
+    } // end getStageP50Millis
+
+    @Override
+    public Map<String, Double> getStageP99Millis()
+    {
+        return perStage(stage -> stage.getPercentileMillis(99));
+    } // end getStageP99Millis
+
+    @Override
+    public Map<String, Double> getStageMaxMillis()
+    {
+        return perStage(Stage::getMaxMillis);
+    } // end getStageMaxMillis
+
+    private Map<String, Double> perStage(ToDoubleFunction<Stage> value)
+    {
+        Map<String, Double> out = new LinkedHashMap<>();
+        for (Stage stage : getStages())
+        {
+            out.put(stage.getName(), value.applyAsDouble(stage));
+        } // end for stages
+        return out;
+    } // end perStage
+
+    private Stage[] getStages()
+    {
+        synchronized (stages)
+        {
+            return stages.values().toArray(new Stage[0]);
+        } // end synchronized
+    } // end getStages
+
+    /**
+     * Formats a table of every stage, for the end of a batch.
+     * @return summary over several lines
+     */
+    @Override
+    public String getSummary()
+    {
+        StringBuilder out = new StringBuilder();
+        out.append(String.format("%d/%d leaves in %.2f s (%.1f leaves/s)%n",
+                getCompleted(), total, getElapsedSeconds(), getLeavesPerSecond()));
+        out.append(String.format("%-10s %8s %9s %9s %9s %9s %9s%n",
+                "stage", "leaves", "mean ms", "p50 ms", "p90 ms", "p99 ms", "max ms"));
+        for (Stage stage : getStages())
+        {
+            out.append(String.format("%-10s %8d %9.2f %9.2f %9.2f %9.2f %9.2f%n",
+                    stage.getName(), stage.getCount(), stage.getMeanMillis(),
+                    stage.getPercentileMillis(50), stage.getPercentileMillis(90),
+                    stage.getPercentileMillis(99), stage.getMaxMillis()));
+        } // end for stages
+        return out.toString();
+    } // end getSummary
+
+    /**
+     * Shows these stats over JMX, replacing the stats of an earlier batch.
+     * They stay registered after the batch so they can still be looked at.
+     */
+    public void register()
+    {
+        try
+        {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(name))
+            {
+                server.unregisterMBean(name);
+            } // end if registered
+            server.registerMBean(this, name);
+        } // end try
+        catch (JMException ex)
+        {
+            // monitoring is optional, the batch runs without it
+        } // end catch
+    } // end register
+
+    // registers beans off the batch threads, one at a time and in order
+    private static class Registrar
+    {
+        static final Timer TIMER = new Timer("batch-jmx", true);
+    } // end Registrar
+
+    /**
+     * Registers these stats after a delay on a background thread. Starting
+     * the platform MBean server takes a few hundred milliseconds, longer
+     * than a short batch from the command line takes, so such batches end
+     * before paying for it while longer ones still show up over JMX.
+     * @param delayMillis how long to wait before registering
+     */
+    public void registerLater(long delayMillis)
+    {
+        Registrar.TIMER.schedule(new TimerTask()
+        {
+            @Override
+            public void run()
+            {
+                register();
+            } // end run
+        }, delayMillis);
+    } // end registerLater
+} // end BatchStats
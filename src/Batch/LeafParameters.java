@@ -0,0 +1,133 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 pthom.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package Batch;
+
+// imports
+import Generator.Generator;
+import Generator.GeometryCache;
+import Generator.LeafGeometry;
+import Generator.LeafSpec;
+
+/**
+ * The parameters of one leaf after the random variation of the batch has
+ * been applied.
+ *
+ * @author pthom
+ */
+public class LeafParameters
+{
+    // image
+    public int width;
+    public int height;
+
+    // midrib
+    public double midribLengthProportion;
+    public double midribOffsetProportion;
+
+    // primary veins
+    public String primaryVeinsStyle;
+    public double[] primaryVeinParameters;
+
+    // lamina
+    public String laminaStyle;
+    public double[] laminaArgs;
+    public String marginStyle = "smooth";  // see MarginStyle
+    public long textureSeed;        // picks the texture, see LaminaTexture
+
+    /**
+     * Describes these parameters as key=value lines, in the same form as a
+     * properties file.
+     * @return text of the parameters
+     */
+    public String toText()
+    {
+        StringBuilder text = new StringBuilder(256);
+        text.append("width=").append(width).append('\n');
+        text.append("height=").append(height).append('\n');
+        text.append("midribLengthProportion=").append(midribLengthProportion).append('\n');
+        text.append("midribOffsetProportion=").append(midribOffsetProportion).append('\n');
+        text.append("primaryVeinsStyle=").append(primaryVeinsStyle).append('\n');
+        text.append("primaryVeinParameters=")
+                .append(BatchParameters.join(primaryVeinParameters)).append('\n');
+        text.append("laminaStyle=").append(laminaStyle).append('\n');
+        text.append("marginStyle=").append(marginStyle).append('\n');
+        text.append("laminaArgs=").append(BatchParameters.join(laminaArgs)).append('\n');
+        return text.toString();
+    } // end toText
+
+    /**
+     * Works out the leaf these parameters describe without a pixel size, so
+     * it can be rendered at several sizes.
+     * @return geometry of the leaf
+     */
+    public LeafGeometry createGeometry()
+    {
+        return toSpec().createGeometry();
+    } // end createGeometry
+
+    /**
+     * Copies these parameters into a spec that cannot change, to hand to
+     * other threads.
+     * @return spec of the leaf
+     */
+    public LeafSpec toSpec()
+    {
+        return new LeafSpec(
+                // image
+                width,
+                height,
+                // midrib
+                midribLengthProportion,
+                midribOffsetProportion,
+                // primary veins
+                primaryVeinsStyle,
+                primaryVeinParameters,
+                // lamina
+                laminaStyle,
+                laminaArgs,
+                marginStyle,
+                textureSeed
+        );
+    } // end toSpec
+
+    /**
+     * Builds the leaf these parameters describe.
+     * @return new leaf
+     */
+    public Generator createGenerator()
+    {
+        return new Generator(toSpec());
+    } // end createGenerator
+
+    /**
+     * Builds the leaf these parameters describe, sharing geometry through
+     * a cache.
+     * @param cache cache of the geometry, null to build it
+     * @return new leaf
+     */
+    public Generator createGenerator(GeometryCache cache)
+    {
+        return new Generator(toSpec(), cache);
+    } // end createGenerator
+} // end LeafParameters
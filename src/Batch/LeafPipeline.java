@@ -0,0 +1,447 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 pthom.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package Batch;
+
+// imports
+import Generator.PngEncoder;
+import Generator.RasterPool;
+import Generator.RenderContext;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.imageio.ImageIO;
+
+/**
+ * Runs a batch as a chain of stages connected by bounded queues:
+ * sample parameters, build the Generator, render, encode and write. Each
+ * stage has its own threads, and a full queue makes the stage before it
+ * wait, so a slow disk or a slow encoder holds back only as much work as
+ * fits into the queues instead of stalling everything.
+ *
+ * Stages that the sink does not need are left out.
+ *
+ * @author pthom
+ */
+public class LeafPipeline
+{
+    /**
+     * The work of one stage, done to one leaf.
+     */
+    private interface StageWork
+    {
+        void process(LeafResult result) throws Exception;
+    } // end StageWork
+
+    // leaves sampled at once by the sample stage
+    private static final int SAMPLE_BLOCK = 1024;
+
+    // how long an interrupted run waits for its threads to stop
+    private static final long STOP_MILLIS = 10000;
+
+    // batches shorter than this never start the JMX server
+    private static final long JMX_DELAY_MILLIS = 1000;
+
+    // put behind the last leaf to tell a stage that no more leaves come
+    private static final LeafResult END = new LeafResult(-1);
+
+    private final BatchGenerator generator;
+    private final BatchParameters parameters;
+    private final LeafSink sink;
+    private final BatchManifest manifest;
+    private final BitSet done;
+    private volatile boolean cancelled;
+
+    private final ThreadLocal<PngEncoder> pngEncoders;
+    private final RasterPool rasterPool;
+    private final RenderContext renderContext;  // shared by render threads
+
+    private final List<Thread> threads = new ArrayList<>();
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+    private final BatchStats stats;
+
+    /**
+     * Constructor.
+     * @param generator samples the parameters of every leaf
+     * @param sink where finished leaves go
+     * @param manifest records every written leaf, may be null
+     * @param done bit i set if leaf startIndex + i is already done and is
+     * skipped
+     */
+    public LeafPipeline(BatchGenerator generator, LeafSink sink,
+            BatchManifest manifest, BitSet done)
+    {
+        this.generator = generator;
+        this.parameters = generator.getParameters();
+        this.sink = sink;
+        this.manifest = manifest;
+        this.done = done;
+        this.stats = generator.getStats();
+        this.renderContext = parameters.getRenderContext();
+
+        // one built in encoder per encoder thread, reused for every leaf
+        final BatchParameters p = parameters;
+        this.pngEncoders = ThreadLocal.withInitial(() ->
+        {
+            PngEncoder encoder = new PngEncoder(p.deflateLevel);
+            encoder.setLossyReduction(p.lossyColorReduction);
+            return encoder;
+        });
+
+        // enough images for every leaf that can be between render and write
+        this.rasterPool = new RasterPool(parameters.getQueueCapacity() * 2
+                + parameters.getRenderThreads() + parameters.getEncoderThreads()
+                + parameters.writerThreads);
+    } // end constructor
+
+    /**
+     * Runs the whole batch and closes the sink, blocking until every leaf
+     * has been written or something failed.
+     * @param listener receives progress updates, may be null
+     * @return number of leaves written
+     * @throws IOException if a leaf could not be written
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public int run(BatchGenerator.ProgressListener listener)
+            throws IOException, InterruptedException
+    {
+        final int total = parameters.count;
+        int capacity = parameters.getQueueCapacity();
+        stats.start(total - done.cardinality());
+        stats.registerLater(JMX_DELAY_MILLIS);
+
+        // sample parameters on a single thread, in index order, a block of
+        // leaves at a time, every leaf from its own (seed, index) stream
+        final BlockingQueue<LeafResult> sampled = new ArrayBlockingQueue<>(capacity);
+        final int start = parameters.startIndex;
+        final BatchStats.Stage sampleStage = stats.stage("sample");
+        addThread("leaf-sample", () ->
+        {
+            try
+            {
+                ParameterBlock block = new ParameterBlock(
+                        Math.min(SAMPLE_BLOCK, Math.max(1, total)),
+                        parameters.veinCount);
+                for (int first = 0; first < total; first += block.capacity)
+                {
+                    int count = Math.min(block.capacity, total - first);
+                    long began = System.nanoTime();
+                    block.fill(parameters, start + first, count);
+                    sampleStage.record(System.nanoTime() - began, count);
+
+                    for (int slot = 0; slot < count; slot++)
+                    {
+                        if (done.get(first + slot))
+                        {
+                            continue;
+                        } // end if already done
+
+                        LeafResult result = new LeafResult(start + first + slot);
+                        result.parameters = block.toLeafParameters(parameters, slot);
+                        sampled.put(result);
+                    } // end for slots
+                } // end for blocks
+                sampled.put(END);
+            } // end try
+            catch (InterruptedException ex)
+            {
+                // pipeline stopped
+            } // end catch
+            catch (Exception | Error ex)
+            {
+                fail(ex);
+            } // end catch
+        });
+
+        BlockingQueue<LeafResult> queue = addStage("leaf-generate",
+                parameters.generatorThreads, sampled, capacity,
+                result -> result.leaf = result.parameters.createGenerator(
+                        generator.getGeometryCache()));
+
+        if (sink.needsImage() || sink.needsEncoding())
+        {
+            queue = addStage("leaf-render", parameters.getRenderThreads(),
+                    queue, capacity,
+                    result -> result.image = result.leaf.createBufferedImage(
+                            rasterPool.acquire(result.leaf.getWidth(),
+                                    result.leaf.getHeight()),
+                            renderContext));
+        } // end if rendering
+
+        if (sink.needsEncoding())
+        {
+            final boolean keepImage = sink.needsImage();
+            queue = addStage("leaf-encode", parameters.getEncoderThreads(),
+                    queue, capacity,
+                    result ->
+                    {
+                        result.encoded = encode(result.image);
+                        if (!keepImage)
+                        {
+                            rasterPool.release(result.image);
+                            result.image = null;
+                        } // end if image not needed
+                    });
+        } // end if encoding
+
+        addStage("leaf-write", parameters.writerThreads, queue, 0,
+                result ->
+                {
+                    sink.write(result);
+                    rasterPool.release(result.image);
+                    result.image = null;
+                    if (manifest != null)
+                    {
+                        manifest.record(result);
+                    } // end if manifest
+                    int completed = (int) stats.leafCompleted();
+                    if (listener != null)
+                    {
+                        listener.leafCompleted(completed, stats.getTotal());
+                    } // end if listener
+                });
+
+        for (Thread thread : threads)
+        {
+            thread.start();
+        } // end for threads
+        if (cancelled)
+        {
+            // cancelled before the threads were running
+            stopAll();
+        } // end if cancelled early
+
+        try
+        {
+            for (Thread thread : threads)
+            {
+                thread.join();
+            } // end for threads
+        } // end try
+        catch (InterruptedException ex)
+        {
+            // let a writer still inside sink.write finish before the close
+            stopAll();
+            awaitStopped(STOP_MILLIS);
+            throw ex;
+        } // end catch
+        finally
+        {
+            try
+            {
+                sink.close();
+            } // end try
+            finally
+            {
+                stats.finish();
+            } // end finally
+        } // end finally
+
+        // a cancel interrupts everything, failures it causes do not count
+        Throwable ex = cancelled ? null : failure.get();
+        if (ex instanceof IOException)
+        {
+            throw (IOException) ex;
+        } // end if io failure
+        else if (ex instanceof RuntimeException)
+        {
+            throw (RuntimeException) ex;
+        } // end else if runtime failure
+        else if (ex instanceof Error)
+        {
+            throw (Error) ex;
+        } // end else if error
+        else if (ex != null)
+        {
+            throw new IOException(ex);
+        } // end else if other failure
+
+        return (int) stats.getCompleted();
+    } // end run
+
+    /**
+     * Encodes an image into the format of the batch.
+     * @param image image to encode
+     * @return encoded bytes
+     * @throws IOException if there is no writer for the format
+     */
+    private byte[] encode(BufferedImage image) throws IOException
+    {
+        if ("png".equalsIgnoreCase(parameters.format)
+                && "builtin".equals(parameters.encoder))
+        {
+            return pngEncoders.get().encode(image);
+        } // end if built in png
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(64 * 1024);
+        if (!ImageIO.write(image, parameters.format, out))
+        {
+            throw new IOException("No writer for format " + parameters.format);
+        } // end if no writer
+        return out.toByteArray();
+    } // end encode
+
+    /**
+     * Adds the threads of one stage.
+     * @param name name of the threads
+     * @param threadCount number of threads working on this stage
+     * @param input queue the stage takes leaves from
+     * @param capacity capacity of the queue the stage puts leaves into, 0
+     * for the last stage which has no such queue
+     * @param work what the stage does to each leaf
+     * @return queue the stage puts leaves into, null for the last stage
+     */
+    private BlockingQueue<LeafResult> addStage(String name, int threadCount,
+            final BlockingQueue<LeafResult> input, int capacity,
+            final StageWork work)
+    {
+        final BlockingQueue<LeafResult> output = capacity > 0
+                ? new ArrayBlockingQueue<LeafResult>(capacity)
+                : null;
+        threadCount = Math.max(1, threadCount);
+        final BatchStats.Stage stage = stats.stage(name.substring(name.indexOf('-') + 1));
+        final AtomicInteger running = new AtomicInteger(threadCount);
+
+        for (int t = 0; t < threadCount; t++)
+        {
+            addThread(name + "-" + t, () ->
+            {
+                try
+                {
+                    while (true)
+                    {
+                        LeafResult result = input.take();
+                        if (result == END)
+                        {
+                            // let the other threads of this stage see it too,
+                            // the last one to stop tells the next stage
+                            input.put(END);
+                            if (running.decrementAndGet() == 0 && output != null)
+                            {
+                                output.put(END);
+                            } // end if last thread
+                            return;
+                        } // end if no more leaves
+
+                        long began = System.nanoTime();
+                        work.process(result);
+                        stage.record(System.nanoTime() - began);
+                        if (output != null)
+                        {
+                            output.put(result);
+                        } // end if not last stage
+                    } // end while leaves come
+                } // end try
+                catch (InterruptedException ex)
+                {
+                    // pipeline stopped
+                } // end catch
+                catch (Exception | Error ex)
+                {
+                    fail(ex);
+                } // end catch
+            });
+        } // end for threads
+
+        return output;
+    } // end addStage
+
+    private void addThread(String name, Runnable runnable)
+    {
+        Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        threads.add(thread);
+    } // end addThread
+
+    /**
+     * Stops every stage. Leaves being worked on are dropped, leaves
+     * already written stay written.
+     */
+    public void cancel()
+    {
+        cancelled = true;
+        stopAll();
+    } // end cancel
+
+    /**
+     * Remembers the first failure and stops every stage.
+     * @param ex what went wrong
+     */
+    private void fail(Throwable ex)
+    {
+        if (failure.compareAndSet(null, ex))
+        {
+            stopAll();
+        } // end if first failure
+    } // end fail
+
+    private void stopAll()
+    {
+        for (Thread thread : threads)
+        {
+            thread.interrupt();
+        } // end for threads
+    } // end stopAll
+
+    /**
+     * Waits for every thread to end after stopAll, at most a given time in
+     * all. Being interrupted again does not cut the wait short, the
+     * interrupt is kept for the caller instead.
+     * @param timeoutMillis longest time to wait
+     */
+    private void awaitStopped(long timeoutMillis)
+    {
+        long deadline = System.nanoTime() + timeoutMillis * 1000000L;
+        boolean interrupted = false;
+        for (Thread thread : threads)
+        {
+            while (thread.isAlive())
+            {
+                long left = (deadline - System.nanoTime()) / 1000000L;
+                if (left <= 0)
+                {
+                    break;
+                } // end if out of time
+                try
+                {
+                    thread.join(left);
+                } // end try
+                catch (InterruptedException ex)
+                {
+                    interrupted = true;
+                } // end catch
+            } // end while running
+        } // end for threads
+        if (interrupted)
+        {
+            Thread.currentThread().interrupt();
+        } // end if interrupted again
+    } // end awaitStopped
+} // end LeafPipeline
@@ -0,0 +1,71 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 pthom.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package Batch;
+
+// imports
+import Generator.SplitMix64;
+
+/**
+ * The seeds of a batch. Every leaf gets its own SplitMix64 stream, started
+ * from (batch seed, leaf index), so a leaf comes out bit-identical no matter
+ * how many threads there are, in which order the leaves are made, or
+ * whether the leaf is regenerated alone. ParameterBlock.fill draws the
+ * stream, this class only derives where it starts.
+ *
+ * @author pthom
+ */
+public final class LeafRandom
+{
+    private static final long TEXTURE_STREAM = 0x5DEECE66DL;
+
+    private LeafRandom()
+    {
+    } // end constructor
+
+    /**
+     * Derives the seed of one leaf of a batch, the starting state of its
+     * stream. Neighboring indices give unrelated seeds.
+     * @param batchSeed seed of the whole batch
+     * @param index index of the leaf within the batch
+     * @return seed of the leaf
+     */
+    public static long leafSeed(long batchSeed, long index)
+    {
+        long gamma = SplitMix64.GOLDEN_GAMMA;
+        return SplitMix64.mix64(batchSeed + SplitMix64.mix64(index * gamma + gamma));
+    } // end leafSeed
+
+    /**
+     * Derives the seed that picks the lamina texture of one leaf. It is
+     * separate from the stream of the leaf, so texturing a batch does not
+     * change the shape of any leaf.
+     * @param batchSeed seed of the whole batch
+     * @param index index of the leaf within the batch
+     * @return texture seed of the leaf
+     */
+    public static long textureSeed(long batchSeed, long index)
+    {
+        return SplitMix64.mix64(leafSeed(batchSeed, index) ^ TEXTURE_STREAM);
+    } // end textureSeed
+} // end LeafRandom
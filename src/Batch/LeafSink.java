@@ -0,0 +1,72 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 pthom.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package Batch;
+
+// imports
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * The last stage of the pipeline, where finished leaves end up. A sink tells
+ * the pipeline which of the earlier stages it needs, so for example a sink
+ * that only wants masks never pays for rendering or encoding.
+ *
+ * @author pthom
+ */
+public interface LeafSink extends Closeable
+{
+    /**
+     * @return whether write needs LeafResult.image
+     */
+    default boolean needsImage()
+    {
+        return true;
+    } // end needsImage
+
+    /**
+     * @return whether write needs LeafResult.encoded
+     */
+    default boolean needsEncoding()
+    {
+        return true;
+    } // end needsEncoding
+
+    /**
+     * Stores one leaf. Called from the writer threads, so must be thread
+     * safe when more than one writer thread is used. LeafResult.image is
+     * reused for another leaf once this returns, so copy what you keep.
+     * @param result finished leaf
+     * @throws IOException if the leaf could not be stored
+     */
+    void write(LeafResult result) throws IOException;
+
+    /**
+     * Called once after the last leaf has been written.
+     * @throws IOException if the sink could not be finished
+     */
+    @Override
+    default void close() throws IOException
+    {
+    } // end close
+} // end LeafSink
@@ -0,0 +1,221 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 pthom.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package Batch;
+
+// imports
+import Generator.LeafMask;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes the masks of all leaves into one NumPy file, masks.npy, of shape
+ * (count, height, width) and dtype bool, so a loader can map the whole
+ * dataset with numpy.load(..., mmap_mode='r') instead of decoding images.
+ *
+ * The file is sized up front and mapped in windows of whole leaves. Every
+ * leaf has a fixed place in it, so writer threads fill their leaves without
+ * locking and without allocating anything per leaf.
+ *
+ * @author pthom
+ */
+public class NpySink implements LeafSink
+{
+    public static final String DATASET_FILE = "masks.npy";
+
+    // a mapping can not be larger than 2 GB, keep windows well below that
+    private static final long WINDOW_BYTES = 1L << 30;
+
+    private final int width;
+    private final int height;
+    private final int firstIndex;
+    private final int count;
+    private final long leafBytes;
+    private final long dataOffset;
+    private final int leavesPerWindow;
+
+    private final RandomAccessFile file;
+    private final MappedByteBuffer[] windows;
+
+    // one mask per writer thread, cast again for every leaf
+    private final ThreadLocal<LeafMask> masks;
+
+    /**
+     * Creates the dataset file, replacing any file of the same name.
+     * @param parameters batch whose leaves go into the file
+     * @throws IOException if the file could not be created
+     */
+    public NpySink(BatchParameters parameters) throws IOException
+    {
+        this.width = parameters.width;
+        this.height = parameters.height;
+        this.firstIndex = parameters.startIndex;
+        this.count = parameters.count;
+        this.leafBytes = (long) width * height;
+        if (leafBytes > WINDOW_BYTES)
+        {
+            throw new IOException("Leaves of " + width + "x" + height
+                    + " are too large for a mapped dataset");
+        } // end if too large
+
+        byte[] header = createHeader(count, height, width);
+        this.dataOffset = header.length;
+        this.leavesPerWindow = (int) (WINDOW_BYTES / leafBytes);
+        this.windows = new MappedByteBuffer[
+                (count + leavesPerWindow - 1) / leavesPerWindow];
+        this.masks = ThreadLocal.withInitial(() -> new LeafMask(width, height));
+
+        File out = new File(parameters.outputDirectory, DATASET_FILE);
+        this.file = new RandomAccessFile(out, "rw");
+        try
+        {
+            file.setLength(0);
+            file.setLength(dataOffset + leafBytes * count);
+            file.write(header);
+        } // end try
+        catch (IOException ex)
+        {
+            file.close();
+            throw ex;
+        } // end catch
+    } // end constructor
+
+    /**
+     * Creates a version 1.0 .npy header for a bool array of the given shape,
+     * padded so the data starts on a 64 byte boundary.
+     * @param count number of leaves
+     * @param height height of a mask
+     * @param width width of a mask
+     * @return bytes of the header
+     */
+    static byte[] createHeader(int count, int height, int width)
+    {
+        StringBuilder dict = new StringBuilder();
+        dict.append("{'descr': '|b1', 'fortran_order': False, 'shape': (")
+                .append(count).append(", ").append(height).append(", ")
+                .append(width).append("), }");
+
+        // magic (6) + version (2) + header length (2) + dict + '\n'
+        int total = 10 + dict.length() + 1;
+        int padded = (total + 63) / 64 * 64;
+        for (int i = total; i < padded; i++)
+        {
+            dict.append(' ');
+        } // end for padding
+        dict.append('\n');
+
+        byte[] text = dict.toString().getBytes(StandardCharsets.US_ASCII);
+        ByteBuffer header = ByteBuffer.allocate(10 + text.length);
+        header.put((byte) 0x93).put("NUMPY".getBytes(StandardCharsets.US_ASCII));
+        header.put((byte) 1).put((byte) 0);
+        header.put((byte) (text.length & 0xff)).put((byte) (text.length >>> 8));
+        header.put(text);
+        return header.array();
+    } // end createHeader
+
+    @Override
+    public boolean needsImage()
+    {
+        return false;
+    } // end needsImage
+
+    @Override
+    public boolean needsEncoding()
+    {
+        return false;
+    } // end needsEncoding
+
+    @Override
+    public void write(LeafResult result) throws IOException
+    {
+        int slot = result.index - firstIndex;
+        if (slot < 0 || slot >= count)
+        {
+            throw new IOException("Leaf " + (result.index + 1)
+                    + " is not part of the dataset");
+        } // end if outside
+
+        LeafMask mask = result.leaf.castLeafMask(masks.get());
+        MappedByteBuffer window = getWindow(slot / leavesPerWindow);
+        int base = (int) ((slot % leavesPerWindow) * leafBytes);
+
+        // absolute puts only, so threads never share a buffer position
+        long[] words = mask.getWords();
+        int wordsPerRow = mask.getWordsPerRow();
+        for (int y = 0; y < height; y++)
+        {
+            int rowStart = base + y * width;
+            int wordStart = y * wordsPerRow;
+            for (int x = 0; x < width; x++)
+            {
+                long word = words[wordStart + (x >>> 6)];
+                window.put(rowStart + x, (byte) ((word >>> (x & 63)) & 1L));
+            } // end for x
+        } // end for y
+    } // end write
+
+    /**
+     * Maps a window of the file the first time it is needed.
+     * @param window number of the window
+     * @return mapped window
+     * @throws IOException if the window could not be mapped
+     */
+    private synchronized MappedByteBuffer getWindow(int window)
+            throws IOException
+    {
+        if (windows[window] == null)
+        {
+            long start = (long) window * leavesPerWindow;
+            long leaves = Math.min(leavesPerWindow, count - start);
+            windows[window] = file.getChannel().map(
+                    FileChannel.MapMode.READ_WRITE,
+                    dataOffset + start * leafBytes,
+                    leaves * leafBytes);
+        } // end if not mapped yet
+        return windows[window];
+    } // end getWindow
+
+    @Override
+    public synchronized void close() throws IOException
+    {
+        try
+        {
+            for (MappedByteBuffer window : windows)
+            {
+                if (window != null)
+                {
+                    window.force();
+                } // end if mapped
+            } // end for windows
+        } // end try
+        finally
+        {
+            file.close();
+        } // end finally
+    } // end close
+} // end NpySink
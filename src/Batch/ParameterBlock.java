@@ -0,0 +1,237 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 pthom.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package Batch;
+
+// imports
+import Generator.SplitMix64;
+import java.util.Arrays;
+
+/**
+ * The sampled parameters of a block of consecutive leaves, kept in
+ * primitive arrays, one array per parameter. A block is filled in one tight
+ * loop and reused for the next block, so sampling allocates nothing.
+ *
+ * Every leaf is drawn from its own SplitMix64 stream, started at
+ * LeafRandom.leafSeed, so a leaf only depends on the batch seed and its
+ * index. This is the only place that stream is drawn and the only place
+ * leaves are sampled: BatchGenerator.sampleLeaf and nominalLeaf use blocks
+ * of one, and toLeafParameters is the only place a leaf is put together.
+ *
+ * @author pthom
+ */
+public class ParameterBlock
+{
+    public final int capacity;
+    public final int veinCount;
+
+    // index of the leaf in slot 0, and how many slots are filled
+    public int firstIndex;
+    public int size;
+
+    // one value per leaf
+    public final double[] midribLengthProportion;
+    public final double[] midribOffsetProportion;
+    public final double[] veinAngle;
+
+    // veinCount values per leaf, leaf after leaf
+    public final double[] veinLengths;
+
+    // {breadth, end of rise, start of fall} per leaf, leaf after leaf
+    public final double[] laminaArgs;
+
+    // seed of the lamina texture of every leaf
+    public final long[] textureSeeds;
+
+    /**
+     * Constructor.
+     * @param capacity most leaves in the block
+     * @param veinCount primary veins on each side of every leaf
+     */
+    public ParameterBlock(int capacity, int veinCount)
+    {
+        this.capacity = capacity;
+        this.veinCount = veinCount;
+        this.midribLengthProportion = new double[capacity];
+        this.midribOffsetProportion = new double[capacity];
+        this.veinAngle = new double[capacity];
+        this.veinLengths = new double[capacity * veinCount];
+        this.laminaArgs = new double[capacity * 3];
+        this.textureSeeds = new long[capacity];
+    } // end constructor
+
+    /**
+     * Samples leaves firstIndex to firstIndex + count - 1 of a batch.
+     * @param p parameters of the batch, with p.veinCount equal to the vein
+     * count of the block
+     * @param firstIndex index of the first leaf
+     * @param count number of leaves, at most capacity
+     */
+    public void fill(BatchParameters p, int firstIndex, int count)
+    {
+        if (count > capacity || p.veinCount != veinCount)
+        {
+            throw new IllegalArgumentException("Block of " + capacity
+                    + " leaves with " + veinCount + " veins can not take "
+                    + count + " leaves with " + p.veinCount + " veins");
+        } // end if does not fit
+
+        this.firstIndex = firstIndex;
+        this.size = count;
+
+        // ranges of the multipliers, 0 when a bound does not vary, in which
+        // case nothing is drawn for it
+        double lengthLow = p.midribLengthBounds[0];
+        double lengthRange = range(p.midribLengthBounds);
+        double offsetLow = p.midribOffsetBounds[0];
+        double offsetRange = range(p.midribOffsetBounds);
+        double angleLow = p.veinAngleBounds[0];
+        double angleRange = range(p.veinAngleBounds);
+        double veinLow = p.veinLengthBounds[0];
+        double veinRange = range(p.veinLengthBounds);
+        double breadth = p.laminaArgs[0];
+        double rise = p.laminaArgs[1];
+        double fall = p.laminaArgs[2];
+
+        for (int i = 0; i < count; i++)
+        {
+            // the stream of the leaf, SplitMix64 inlined
+            long state = LeafRandom.leafSeed(p.seed, firstIndex + i);
+
+            double mult = lengthLow;
+            if (lengthRange > 0)
+            {
+                state += SplitMix64.GOLDEN_GAMMA;
+                mult += unit(state) * lengthRange;
+            } // end if varies
+            midribLengthProportion[i] = p.midribLengthProportion * mult;
+
+            mult = offsetLow;
+            if (offsetRange > 0)
+            {
+                state += SplitMix64.GOLDEN_GAMMA;
+                mult += unit(state) * offsetRange;
+            } // end if varies
+            midribOffsetProportion[i] = p.midribOffsetProportion * mult;
+
+            mult = angleLow;
+            if (angleRange > 0)
+            {
+                state += SplitMix64.GOLDEN_GAMMA;
+                mult += unit(state) * angleRange;
+            } // end if varies
+            veinAngle[i] = p.veinAngle * mult;
+
+            int v = i * veinCount;
+            for (int j = 0; j < veinCount; j++)
+            {
+                mult = veinLow;
+                if (veinRange > 0)
+                {
+                    state += SplitMix64.GOLDEN_GAMMA;
+                    mult += unit(state) * veinRange;
+                } // end if varies
+                veinLengths[v + j] = 1.0 * mult;
+            } // end for veins
+
+            laminaArgs[3 * i] = breadth;
+            laminaArgs[3 * i + 1] = rise;
+            laminaArgs[3 * i + 2] = fall;
+            textureSeeds[i] = LeafRandom.textureSeed(p.seed, firstIndex + i);
+        } // end for leaves
+    } // end fill
+
+    /**
+     * Puts the leaf without any random variation into slot 0, the leaf
+     * the preview shows. Its texture seed is 0, so the preview keeps its
+     * texture whatever the seed of the batch.
+     * @param p parameters of the batch, with p.veinCount equal to the vein
+     * count of the block
+     */
+    public void fillNominal(BatchParameters p)
+    {
+        if (p.veinCount != veinCount)
+        {
+            throw new IllegalArgumentException("Block with " + veinCount
+                    + " veins can not take a leaf with " + p.veinCount + " veins");
+        } // end if does not fit
+
+        this.firstIndex = 0;
+        this.size = 1;
+        midribLengthProportion[0] = p.midribLengthProportion;
+        midribOffsetProportion[0] = p.midribOffsetProportion;
+        veinAngle[0] = p.veinAngle;
+        Arrays.fill(veinLengths, 0, veinCount, 1.0);
+        System.arraycopy(p.laminaArgs, 0, laminaArgs, 0, 3);
+        textureSeeds[0] = 0;
+    } // end fillNominal
+
+    /**
+     * @return width of the bounds, 0 if they do not vary
+     */
+    private static double range(double[] bounds)
+    {
+        return bounds[1] <= bounds[0] ? 0 : bounds[1] - bounds[0];
+    } // end range
+
+    /**
+     * Turns a SplitMix64 state into the next double of its stream, in
+     * [0, 1).
+     */
+    private static double unit(long state)
+    {
+        return SplitMix64.toDouble(SplitMix64.mix64(state));
+    } // end unit
+
+    /**
+     * Copies one leaf out of the block into the form the Generator takes.
+     * @param p parameters of the batch, for what does not vary
+     * @param slot slot of the leaf, 0 to size - 1
+     * @return parameters of the leaf
+     */
+    public LeafParameters toLeafParameters(BatchParameters p, int slot)
+    {
+        LeafParameters leaf = new LeafParameters();
+        // image
+        leaf.width = p.width;
+        leaf.height = p.height;
+        // midrib
+        leaf.midribLengthProportion = midribLengthProportion[slot];
+        leaf.midribOffsetProportion = midribOffsetProportion[slot];
+        // primary veins, {count, angle, length 1, length 2, ...}
+        leaf.primaryVeinsStyle = p.primaryVeinsStyle;
+        leaf.primaryVeinParameters = new double[2 + veinCount];
+        leaf.primaryVeinParameters[0] = veinCount;
+        leaf.primaryVeinParameters[1] = veinAngle[slot];
+        System.arraycopy(veinLengths, slot * veinCount,
+                leaf.primaryVeinParameters, 2, veinCount);
+        // lamina
+        leaf.laminaStyle = p.laminaStyle;
+        leaf.laminaArgs = new double[3];
+        System.arraycopy(laminaArgs, slot * 3, leaf.laminaArgs, 0, 3);
+        leaf.marginStyle = p.marginStyle;
+        leaf.textureSeed = textureSeeds[slot];
+
+        return leaf;
+    } // end toLeafParameters
+} // end ParameterBlock
@@ -0,0 +1,75 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 pthom.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package Batch;
+
+// imports
+import Generator.Palette;
+import Generator.SvgWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/**
+ * Writes every leaf as an SVG file, saved1.svg, saved2.svg, ..., straight
+ * from its geometry, so neither the render nor the encode stage runs.
+ *
+ * @author pthom
+ */
+public class SvgSink implements LeafSink
+{
+    private final BatchParameters parameters;
+    private final Palette palette;
+
+    // one writer per writer thread, each reuses its buffer
+    private final ThreadLocal<SvgWriter> writers =
+            ThreadLocal.withInitial(SvgWriter::new);
+
+    public SvgSink(BatchParameters parameters)
+    {
+        this.parameters = parameters;
+        this.palette = parameters.getRenderContext().palette;
+    } // end constructor
+
+    @Override
+    public boolean needsImage()
+    {
+        return false;
+    } // end needsImage
+
+    @Override
+    public boolean needsEncoding()
+    {
+        return false;
+    } // end needsEncoding
+
+    @Override
+    public void write(LeafResult result) throws IOException
+    {
+        File file = new File(parameters.outputDirectory,
+                "saved" + (result.index + 1) + ".svg");
+        Files.write(file.toPath(), writers.get().write(result.leaf, palette)
+                .getBytes(StandardCharsets.UTF_8));
+    } // end write
+} // end SvgSink
@@ -0,0 +1,228 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 pthom.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package Batch;
+
+// imports
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+/**
+ * Appends the leaves of a batch to tar shards, leaves-00000.tar,
+ * leaves-00001.tar, ..., instead of writing millions of loose files. Every
+ * leaf becomes two entries, the encoded image saved{n}.png and its
+ * parameters saved{n}.properties. A shard is closed and the next one started
+ * once it would grow past BatchParameters.shardBytes.
+ *
+ * Next to every shard an index, leaves-00000.idx, lists each entry as
+ * "name offset size", where offset is where the data of the entry starts in
+ * the shard, so a reader can seek straight to any leaf.
+ *
+ * @author pthom
+ */
+public class TarShardSink implements LeafSink
+{
+    private static final int BLOCK = 512;
+    private static final int BUFFER_BYTES = 1 << 20;
+
+    private final BatchParameters parameters;
+    private final byte[] header = new byte[BLOCK];
+
+    // shard being written, null before the first leaf
+    private OutputStream shard;
+    private Writer index;
+    private long shardOffset;
+    private int shardCount = 0;
+
+    public TarShardSink(BatchParameters parameters)
+    {
+        this.parameters = parameters;
+    } // end constructor
+
+    @Override
+    public boolean needsImage()
+    {
+        return false;
+    } // end needsImage
+
+    @Override
+    public synchronized void write(LeafResult result) throws IOException
+    {
+        String name = "saved" + (result.index + 1);
+        byte[] sidecar = ("leaf=" + (result.index + 1) + "\n"
+                + result.parameters.toText())
+                .getBytes(StandardCharsets.UTF_8);
+
+        long size = entrySize(result.encoded.length) + entrySize(sidecar.length);
+        if (shard == null || (shardOffset > 0
+                && shardOffset + size + 2 * BLOCK > parameters.shardBytes))
+        {
+            nextShard();
+        } // end if shard full
+
+        writeEntry(name + "." + parameters.format, result.encoded);
+        writeEntry(name + ".properties", sidecar);
+    } // end write
+
+    /**
+     * @param dataLength length of the data of an entry
+     * @return bytes the entry takes up in the tar, header included
+     */
+    private static long entrySize(int dataLength)
+    {
+        return BLOCK + (dataLength + BLOCK - 1) / BLOCK * (long) BLOCK;
+    } // end entrySize
+
+    /**
+     * Finishes the shard being written and starts the next one.
+     * @throws IOException if a shard could not be written
+     */
+    private void nextShard() throws IOException
+    {
+        finishShard();
+
+        String name = String.format("leaves-%05d", shardCount++);
+        shard = new BufferedOutputStream(new FileOutputStream(
+                new File(parameters.outputDirectory, name + ".tar")),
+                BUFFER_BYTES);
+        index = Files.newBufferedWriter(
+                new File(parameters.outputDirectory, name + ".idx").toPath(),
+                StandardCharsets.UTF_8);
+        shardOffset = 0;
+    } // end nextShard
+
+    /**
+     * Ends the shard being written with the two empty blocks of a tar.
+     * @throws IOException if the shard could not be written
+     */
+    private void finishShard() throws IOException
+    {
+        if (shard == null)
+        {
+            return;
+        } // end if no shard
+
+        try
+        {
+            shard.write(new byte[2 * BLOCK]);
+        } // end try
+        finally
+        {
+            try
+            {
+                shard.close();
+            } // end try
+            finally
+            {
+                index.close();
+                shard = null;
+                index = null;
+            } // end finally
+        } // end finally
+    } // end finishShard
+
+    /**
+     * Appends one file to the shard and the index.
+     * @param name name of the file, at most 100 ASCII characters
+     * @param data contents of the file
+     * @throws IOException if the entry could not be written
+     */
+    private void writeEntry(String name, byte[] data) throws IOException
+    {
+        fillHeader(name, data.length);
+        shard.write(header);
+        shard.write(data);
+        int padding = (BLOCK - data.length % BLOCK) % BLOCK;
+        if (padding > 0)
+        {
+            shard.write(new byte[padding]);
+        } // end if padding
+
+        index.write(name + " " + (shardOffset + BLOCK) + " " + data.length + "\n");
+        shardOffset += entrySize(data.length);
+    } // end writeEntry
+
+    /**
+     * Fills the header block with a ustar header of a regular file.
+     * @param name name of the file
+     * @param size size of the file in bytes
+     */
+    private void fillHeader(String name, long size)
+    {
+        Arrays.fill(header, (byte) 0);
+        putString(name, 0, 100);
+        putOctal(0644, 100, 8);                     // mode
+        putOctal(0, 108, 8);                        // uid
+        putOctal(0, 116, 8);                        // gid
+        putOctal(size, 124, 12);
+        putOctal(System.currentTimeMillis() / 1000, 136, 12);
+        header[156] = '0';                          // regular file
+        putString("ustar", 257, 6);
+        header[263] = '0';
+        header[264] = '0';
+
+        // the checksum is taken with its own field set to spaces
+        Arrays.fill(header, 148, 156, (byte) ' ');
+        long checksum = 0;
+        for (byte b : header)
+        {
+            checksum += b & 0xff;
+        } // end for header
+        putOctal(checksum, 148, 7);
+        header[155] = ' ';
+    } // end fillHeader
+
+    private void putString(String value, int offset, int length)
+    {
+        byte[] bytes = value.getBytes(StandardCharsets.US_ASCII);
+        System.arraycopy(bytes, 0, header, offset, Math.min(bytes.length, length));
+    } // end putString
+
+    /**
+     * Writes a zero padded octal number followed by a NUL.
+     */
+    private void putOctal(long value, int offset, int length)
+    {
+        String octal = Long.toOctalString(value);
+        int digits = length - 1;
+        for (int i = 0; i < digits; i++)
+        {
+            int from = octal.length() - digits + i;
+            header[offset + i] = (byte) (from >= 0 ? octal.charAt(from) : '0');
+        } // end for digits
+        header[offset + digits] = 0;
+    } // end putOctal
+
+    @Override
+    public synchronized void close() throws IOException
+    {
+        finishShard();
+    } // end close
+} // end TarShardSink
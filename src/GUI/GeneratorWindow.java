@@ -1,12 +1,15 @@
 package GUI;
 
-import Generator.Generator;
+import Batch.BatchGenerator;
+import Batch.BatchMain;
+import Batch.BatchManifest;
+import Batch.BatchParameters;
+import Batch.BatchStats;
+import Batch.LeafParameters;
 import java.awt.event.WindowEvent;
-import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
-import java.util.concurrent.ThreadLocalRandom;
-import javax.imageio.ImageIO;
+import javax.swing.SwingUtilities;
 
 /*
  * To change this license header, choose License Headers in Project Properties.
@@ -26,8 +29,159 @@ public class GeneratorWindow extends javax.swing.JFrame {
     public GeneratorWindow() {
         initComponents();
         this.setTitle("Leaf Generator");
+        installPreview();
     }
 
+    /**
+     * Adds the live preview: a menu item to open it, and listeners that
+     * render the leaf again whenever a slider or field changes. Kept out of
+     * initComponents so the form editor does not overwrite it.
+     */
+    private void installPreview()
+    {
+        previewView = new ViewImagePopout();
+        previewFrame = new javax.swing.JFrame("Leaf Preview");
+        previewFrame.getContentPane().add(previewView);
+        previewFrame.pack();
+
+        preview = new LeafPreview(previewView, this::readPreviewLeaf);
+
+        javax.swing.JMenuItem showPreview = new javax.swing.JMenuItem("Show live preview");
+        showPreview.addActionListener(e ->
+        {
+            previewFrame.setVisible(true);
+            preview.update();
+        });
+        ToolMenu.add(showPreview);
+
+        // sliders report every step of a drag, fields every keystroke
+        javax.swing.event.ChangeListener sliderListener = e -> updatePreview();
+        laminaRiseSlider.addChangeListener(sliderListener);
+        laminaFallSlider.addChangeListener(sliderListener);
+
+        javax.swing.event.DocumentListener fieldListener = new javax.swing.event.DocumentListener()
+        {
+            @Override
+            public void insertUpdate(javax.swing.event.DocumentEvent e)
+            {
+                updatePreview();
+            } // end insertUpdate
+
+            @Override
+            public void removeUpdate(javax.swing.event.DocumentEvent e)
+            {
+                updatePreview();
+            } // end removeUpdate
+
+            @Override
+            public void changedUpdate(javax.swing.event.DocumentEvent e)
+            {
+                updatePreview();
+            } // end changedUpdate
+        };
+        javax.swing.JTextField[] fields =
+        {
+            widthField, heightField, midribLengthPropField,
+            midribOffsetPropField, laminaBreadthField, laminaRiseField,
+            laminaFallField, pVNumVeinsLB, pVAngleField
+        };
+        for (javax.swing.JTextField field : fields)
+        {
+            field.getDocument().addDocumentListener(fieldListener);
+        } // end for fields
+    } // end installPreview
+
+    private void updatePreview()
+    {
+        if (previewFrame.isVisible())
+        {
+            preview.update();
+        } // end if preview shown
+    } // end updatePreview
+
+    /**
+     * Reads the leaf to preview: the fields without any variation, the same
+     * values a batch would use. Only while the rise or fall slider is being
+     * dragged is its value taken instead, so a drag shows up right away;
+     * the field follows once the slider is let go.
+     * @return parameters of the leaf, null while a field is not a number
+     */
+    private LeafParameters readPreviewLeaf()
+    {
+        try
+        {
+            BatchParameters parameters = readParameters(true);
+            if (parameters.width <= 0 || parameters.height <= 0)
+            {
+                return null;
+            } // end if no image
+            return new BatchGenerator(parameters).nominalLeaf();
+        } // end try
+        catch (NumberFormatException ex)
+        {
+            return null;
+        } // end catch
+    } // end readPreviewLeaf
+
+    /**
+     * Copies the fields into batch parameters.
+     * @return parameters of the batch
+     * @throws NumberFormatException if a field is not a number
+     */
+    private BatchParameters readParameters()
+    {
+        return readParameters(false);
+    } // end readParameters
+
+    /**
+     * Copies the fields into batch parameters.
+     * @param dragging whether a lamina slider that is being dragged wins
+     * over its field
+     * @return parameters of the batch
+     * @throws NumberFormatException if a field is not a number
+     */
+    private BatchParameters readParameters(boolean dragging)
+    {
+        BatchParameters parameters = new BatchParameters();
+
+        // get values from fields
+        parameters.width = Integer.parseInt(widthField.getText());
+        parameters.height = Integer.parseInt(heightField.getText());
+
+        parameters.midribLengthProportion = Double.parseDouble(midribLengthPropField.getText());
+        parameters.midribLengthBounds[0] = 1.0 + Double.parseDouble(midribLengthPropLB.getText());
+        parameters.midribLengthBounds[1] = 1.0 + Double.parseDouble(midribLengthPropRB.getText());
+
+        parameters.midribOffsetProportion = Double.parseDouble(midribOffsetPropField.getText());
+        parameters.midribOffsetBounds[0] = 1.0 + Double.parseDouble(midribMarginPropLB.getText());
+        parameters.midribOffsetBounds[1] = 1.0 + Double.parseDouble(midribMarginPropRB.getText());
+
+        parameters.laminaArgs[0] = Double.parseDouble(laminaBreadthField.getText());
+        parameters.laminaArgs[1] = readLamina(laminaRiseField, laminaRiseSlider, dragging);
+        parameters.laminaArgs[2] = readLamina(laminaFallField, laminaFallSlider, dragging);
+
+        parameters.veinCount = (int) Double.parseDouble(pVNumVeinsLB.getText());
+        parameters.veinAngle = Double.parseDouble(pVAngleField.getText());
+        parameters.veinAngleBounds[0] = 1.0 + Double.parseDouble(pVAngleLB.getText());
+        parameters.veinAngleBounds[1] = 1.0 + Double.parseDouble(pVAngleRB.getText());
+
+        return parameters;
+    } // end readParameters
+
+    /**
+     * Reads the rise or fall of the lamina from its field, or from its
+     * slider while that is being dragged.
+     */
+    private static double readLamina(javax.swing.JTextField field,
+            javax.swing.JSlider slider, boolean dragging)
+    {
+        if (dragging && slider.getValueIsAdjusting())
+        {
+            return slider.getValue() / 100.0;
+        } // end if being dragged
+        return Double.parseDouble(field.getText());
+    } // end readLamina
+
     /**
      * This method is called from within the constructor to initialize the form.
      * WARNING: Do NOT modify this code. The content of this method is always
@@ -729,134 +883,126 @@ public class GeneratorWindow extends javax.swing.JFrame {
 
     private void startButtonActionPerformed(java.awt.event.ActionEvent evt)//GEN-FIRST:event_startButtonActionPerformed
     {//GEN-HEADEREND:event_startButtonActionPerformed
-        // initialize variables to be gotten from fields
-        // dimensions
-        int width, height;
-        // midrib
-        double midribLenProp, midribOffsetProp;
-        double[] midribLenPropBounds = new double[2];
-        double[] midribOffsetPropBounds = new double[2];
-
-        // primary veins
-        String[] pVLenStrs = new String[(int) (Double.parseDouble(pVNumVeinsLB.getText()))]; // pVVeinLengthsField.getText().split(",");
-        
-        for (int i = 0; i < pVLenStrs.length; i++)
+        // while a batch runs the start button cancels it
+        if (runningBatch != null)
         {
-            pVLenStrs[i] = "1.0";
-        }
-        
-        double[] pVLengths = new double[pVLenStrs.length];
-        double[] pVParameters = new double[2 + pVLenStrs.length];
-        double[] pVAngleBounds = new double[2];
-        double[] pVLengthBounds = {1.0, 1.01};
-        
-        double[] laminaArgs = new double[3];
+            runningBatch.cancel();
+            startButton.setEnabled(false);
+            return;
+        } // end if running
 
-        // get values from fields
-        width = Integer.parseInt(widthField.getText());
-        height = Integer.parseInt(heightField.getText());
+        // copy the fields into batch parameters
+        final BatchParameters parameters = readParameters();
 
-        midribLenProp = Double.parseDouble(midribLengthPropField.getText());
-        midribLenPropBounds[0] = 1.0 + Double.parseDouble(midribLengthPropLB.getText());
-        midribLenPropBounds[1] = 1.0 + Double.parseDouble(midribLengthPropRB.getText());
+        parameters.count = (int) genOptsNumSpinner.getValue();
+        parameters.outputDirectory = new File(genOptsPathField.getText());
+        parameters.format = (String) genOptsFileTypeComboBox.getSelectedItem();
 
-        midribOffsetProp = Double.parseDouble(midribOffsetPropField.getText());
-        midribOffsetPropBounds[0] = 1.0 + Double.parseDouble(midribMarginPropLB.getText());
-        midribOffsetPropBounds[1] = 1.0 + Double.parseDouble(midribMarginPropRB.getText());
-        
-        laminaArgs[0] = Double.parseDouble(laminaBreadthField.getText());
-        laminaArgs[1] = Double.parseDouble(laminaRiseField.getText());
-        laminaArgs[2] = Double.parseDouble(laminaFallField.getText());
-
-//        // copy strings to doubles in arrays
-        for (int i = 0; i < pVLenStrs.length; i++)
+        // offer to finish a batch that was cancelled or died in this folder
+        if (!offerResume(parameters))
         {
-            pVLengths[i] = Double.parseDouble(pVLenStrs[i]);
-        } // end for loop
-
-        pVParameters[0] = Double.parseDouble(pVNumVeinsLB.getText());
-        pVParameters[1] = Double.parseDouble(pVAngleField.getText());
-
-        for (int i = 2; i < pVParameters.length; i++)
+            return;
+        } // end if user backed out
+
+        final BatchGenerator generator = new BatchGenerator(parameters);
+        final BatchStats stats = generator.getStats();
+        runningBatch = generator;
+        progressBar.setMinimum(0);
+        progressBar.setMaximum(parameters.count);
+        progressBar.setValue(0);
+        startButton.setText("Cancel");
+
+        // poll the counters of the batch instead of posting every leaf
+        final javax.swing.Timer progressTimer = new javax.swing.Timer(100, e ->
         {
-            pVParameters[i] = pVLengths[i-2];
-        } // end for loop
-
-        pVAngleBounds[0] = 1.0 + Double.parseDouble(pVAngleLB.getText());
-        pVAngleBounds[1] = 1.0 + Double.parseDouble(pVAngleRB.getText());
+            progressBar.setMaximum(stats.getTotal());
+            progressBar.setValue((int) stats.getCompleted());
+            progressLabel.setText(String.format("Progress (%.1f leaves/s)",
+                    stats.getLeavesPerSecond()));
+        });
+        progressTimer.start();
 
-        for (int i = 0; i < (int) genOptsNumSpinner.getValue(); i++)
+        // run the batch off of the event thread so the window stays usable
+        Thread batchThread = new Thread(() ->
         {
-            // generate random numbers between bounds
-            double midribLenPropMult = ThreadLocalRandom.current().nextDouble(
-                midribLenPropBounds[0],
-                midribLenPropBounds[1]
-            );
-            double midribOffsetPropMult = ThreadLocalRandom.current().nextDouble(
-                midribOffsetPropBounds[0],
-                midribOffsetPropBounds[1]
-            );
-            double pVAngleMult = ThreadLocalRandom.current().nextDouble(
-                pVAngleBounds[0],
-                pVAngleBounds[1]
-            );
-
-            // multiply parameters by random values
-            // copy pVParameters
-            double[] pVLocParams = pVParameters.clone();
-
-            pVLocParams[1] *= pVAngleMult;
-
-            for (int j = 2; j < pVParameters.length; j++)
-            {
-                pVLocParams[j] *= ThreadLocalRandom.current().nextDouble(
-                    pVLengthBounds[0],
-                    pVLengthBounds[1]
-                );
-            } // end for loop
-
-            Generator arrayGen = new Generator(
-                // image
-                width,		// width
-                height,		// height
-                // midrib
-                midribLenProp *
-                midribLenPropMult, 	// midrib length proportion
-                1,                          // midrib actual length (unused)
-                midribOffsetProp *
-                midribOffsetPropMult, //start offset proportion
-                // primary veins
-                "pinnate",          // style
-                pVLocParams,       // parameters of generation
-                // lamina
-                "linear",               // style
-                laminaArgs // arguments
-            );
-
-            progressBar.setMinimum(0);
-            progressBar.setMaximum(i);
-            progressBar.setValue(0);
             try
             {
-                // retrieve image
-                BufferedImage bi = arrayGen.createBufferedImage();
-                File outputFile;
-                System.out.println("Saving to " + genOptsPathField.getText() + "\\saved" + (i+1) + ".png");
-                outputFile = new File(genOptsPathField.getText() + "\\saved" + (i+1) + ".png");
-                ImageIO.write(
-                    bi,
-                    (String) genOptsFileTypeComboBox.getSelectedItem(),
-                    outputFile
-                );
-                progressBar.setValue(i);
+                generator.run(null);
+                System.out.print(stats.getSummary());
             } // end try
-            catch (IOException e)
+            catch (IOException | InterruptedException e)
             {
                 e.printStackTrace();
             } // end catch
-        } // end for loop
+            finally
+            {
+                SwingUtilities.invokeLater(() ->
+                {
+                    progressTimer.stop();
+                    progressBar.setValue((int) stats.getCompleted());
+                    if (generator.isCancelled())
+                    {
+                        progressLabel.setText("Cancelled, start again to resume");
+                    } // end if cancelled
+                    runningBatch = null;
+                    startButton.setText("Start");
+                    startButton.setEnabled(true);
+                });
+            } // end finally
+        }, "leaf-batch");
+        batchThread.start();
     }//GEN-LAST:event_startButtonActionPerformed
 
+    /**
+     * Asks whether to resume when the output folder holds a batch whose
+     * manifest lists fewer leaves than the batch has. Resuming replaces the
+     * parameters with the saved ones, so the missing leaves come out the
+     * same as they would have.
+     * @param parameters parameters from the fields, changed when resuming
+     * @return false if the user cancelled
+     */
+    private boolean offerResume(BatchParameters parameters)
+    {
+        File saved = new File(parameters.outputDirectory, BatchMain.BATCH_FILE);
+        if (!saved.isFile()
+                || !new File(parameters.outputDirectory, BatchManifest.FILE).isFile())
+        {
+            return true;
+        } // end if no earlier batch
+
+        try
+        {
+            BatchParameters earlier = new BatchParameters();
+            earlier.load(saved);
+            int done = BatchManifest.load(parameters.outputDirectory,
+                    earlier.startIndex, earlier.count).cardinality();
+            if (done >= earlier.count
+                    || !BatchGenerator.isResumable(earlier.output))
+            {
+                return true;
+            } // end if earlier batch finished or not resumable
+
+            int answer = javax.swing.JOptionPane.showConfirmDialog(this,
+                    "The output folder holds an unfinished batch (" + done
+                    + " of " + earlier.count + " leaves).\n"
+                    + "Resume it? No starts a new batch over it.",
+                    "Resume batch",
+                    javax.swing.JOptionPane.YES_NO_CANCEL_OPTION);
+            if (answer == javax.swing.JOptionPane.YES_OPTION)
+            {
+                parameters.load(saved);
+                parameters.resume = true;
+            } // end if resume
+            return answer == javax.swing.JOptionPane.YES_OPTION
+                    || answer == javax.swing.JOptionPane.NO_OPTION;
+        } // end try
+        catch (IOException ex)
+        {
+            // not readable, treat it as a new batch
+            return true;
+        } // end catch
+    } // end offerResume
+
     private void genOptsPathFieldActionPerformed(java.awt.event.ActionEvent evt)//GEN-FIRST:event_genOptsPathFieldActionPerformed
     {//GEN-HEADEREND:event_genOptsPathFieldActionPerformed
         // TODO add your handling code here:
@@ -1012,6 +1158,14 @@ public class GeneratorWindow extends javax.swing.JFrame {
         });
     }
 
+    // batch being generated, null when idle
+    private BatchGenerator runningBatch;
+
+    // live preview, see installPreview
+    private ViewImagePopout previewView;
+    private javax.swing.JFrame previewFrame;
+    private LeafPreview preview;
+
     // Variables declaration - do not modify//GEN-BEGIN:variables
     private javax.swing.JMenu EditMenu;
     private javax.swing.JMenu FileMenu;
@@ -0,0 +1,163 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 pthom.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package GUI;
+
+// imports
+import Batch.LeafParameters;
+import Generator.Generator;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+
+/**
+ * Renders the leaf described by the fields of the window into a
+ * ViewImagePopout while they are being edited.
+ *
+ * Edits are debounced by a short timer, so dragging a slider starts one
+ * render per pause rather than one per pixel. Rendering happens on a
+ * background thread: first a quick draft at a quarter of the size without
+ * antialiasing, then the full leaf. Every request gets a new generation
+ * number, and a render that finds a newer one stops and shows nothing, so
+ * only the latest parameters ever reach the screen.
+ *
+ * @author pthom
+ */
+public class LeafPreview
+{
+    // how long edits have to pause before a render starts
+    public static final int DEBOUNCE_MILLIS = 40;
+
+    // the draft is this many times smaller than the leaf
+    public static final int DRAFT_DIVISOR = 4;
+
+    private final ViewImagePopout view;
+    private final Supplier<LeafParameters> parameters;
+    private final Timer debounce;
+    private final AtomicLong generation = new AtomicLong();
+    private final ExecutorService renderer = Executors.newSingleThreadExecutor(r ->
+    {
+        Thread thread = new Thread(r, "leaf-preview");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Constructor.
+     * @param view where the leaf is shown
+     * @param parameters reads the parameters from the window on the event
+     * dispatch thread, returns null while the fields are not valid
+     */
+    public LeafPreview(ViewImagePopout view, Supplier<LeafParameters> parameters)
+    {
+        this.view = view;
+        this.parameters = parameters;
+        this.debounce = new Timer(DEBOUNCE_MILLIS, e -> render());
+        this.debounce.setRepeats(false);
+    } // end constructor
+
+    /**
+     * Asks for a new render once edits pause. Call on the event dispatch
+     * thread after every edit.
+     */
+    public void update()
+    {
+        // anything still rendering is out of date now
+        generation.incrementAndGet();
+        debounce.restart();
+    } // end update
+
+    /**
+     * Starts rendering the current parameters.
+     */
+    private void render()
+    {
+        final LeafParameters leaf = parameters.get();
+        if (leaf == null)
+        {
+            return;
+        } // end if fields not valid
+
+        final long id = generation.incrementAndGet();
+        renderer.execute(() ->
+        {
+            try
+            {
+                if (id != generation.get())
+                {
+                    return;
+                } // end if stale
+
+                // draft: a quarter of the size, straight from the geometry
+                int draftWidth = Math.max(1, leaf.width / DRAFT_DIVISOR);
+                int draftHeight = Math.max(1, leaf.height / DRAFT_DIVISOR);
+                show(id, leaf.createGeometry().render(draftWidth, draftHeight, false));
+
+                if (id != generation.get())
+                {
+                    return;
+                } // end if stale
+
+                // the full leaf, exactly as a batch would write it
+                Generator generator = leaf.createGenerator();
+                show(id, generator.createBufferedImage());
+            } // end try
+            catch (RuntimeException ex)
+            {
+                // parameters the generator can not draw, keep the last image
+                Logger.getLogger(LeafPreview.class.getName()).log(Level.WARNING,
+                        "Could not preview " + leaf.toText(), ex);
+            } // end catch
+        });
+    } // end render
+
+    /**
+     * Shows an image unless a newer render was requested meanwhile.
+     */
+    private void show(final long id, final BufferedImage image)
+    {
+        SwingUtilities.invokeLater(() ->
+        {
+            if (id == generation.get())
+            {
+                view.setImage(image);
+            } // end if still current
+        });
+    } // end show
+
+    /**
+     * Stops the background thread.
+     */
+    public void dispose()
+    {
+        debounce.stop();
+        generation.incrementAndGet();
+        renderer.shutdownNow();
+    } // end dispose
+} // end LeafPreview
@@ -23,14 +23,22 @@
  */
 package GUI;
 
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
 import java.awt.image.BufferedImage;
 
 /**
+ * Shows one image, scaled to fit the panel without changing its aspect
+ * ratio. Used by the live preview, which swaps in a new image every time a
+ * render finishes.
  *
  * @author pthom
  */
 public class ViewImagePopout extends javax.swing.JPanel
 {
+    private BufferedImage image;
 
     /**
      * Creates new form ViewImagePopout
@@ -38,8 +46,57 @@ public class ViewImagePopout extends javax.swing.JPanel
     public ViewImagePopout(BufferedImage image)
     {
         initComponents();
+        setPreferredSize(new Dimension(640, 360));
+        setImage(image);
     }
 
+    /**
+     * Creates an empty form ViewImagePopout
+     */
+    public ViewImagePopout()
+    {
+        this(null);
+    } // end constructor
+
+    /**
+     * Shows another image. Must be called on the event dispatch thread.
+     * @param image image to show, may be null
+     */
+    public void setImage(BufferedImage image)
+    {
+        this.image = image;
+        repaint();
+    } // end setImage
+
+    public BufferedImage getImage()
+    {
+        return image;
+    } // end getImage
+
+    @Override
+    protected void paintComponent(Graphics g)
+    {
+        super.paintComponent(g);
+        if (image == null)
+        {
+            return;
+        } // end if no image
+
+        // fit the image, centered
+        double scale = Math.min(
+                (double) getWidth() / image.getWidth(),
+                (double) getHeight() / image.getHeight());
+        int w = (int) (image.getWidth() * scale);
+        int h = (int) (image.getHeight() * scale);
+
+        Graphics2D g2 = (Graphics2D) g.create();
+        g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+                RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g2.drawImage(image, (getWidth() - w) / 2, (getHeight() - h) / 2,
+                w, h, null);
+        g2.dispose();
+    } // end paintComponent
+
     /**
      * This method is called from within the constructor to initialize the form.
      * WARNING: Do NOT modify this code. The content of this method is always
@@ -31,7 +31,7 @@ public class EllipseMath
 {
     public static class Ellipse
     {
-        double h, k;
+        final double h, k;
         
         public Ellipse(double h, double k)
         {
@@ -43,11 +43,145 @@ public class EllipseMath
         {
             return new double[] {-h, h};
         } // end method getBounds
+
+        public double getH()
+        {
+            return h;
+        } // end method getH
+
+        public double getK()
+        {
+            return k;
+        } // end method getK
+
+        /**
+         * Same as getBounds()[0] without creating an array.
+         * @return smallest x value of the ellipse
+         */
+        public double getMinX()
+        {
+            return -h;
+        } // end method getMinX
+
+        /**
+         * Same as getBounds()[1] without creating an array.
+         * @return largest x value of the ellipse
+         */
+        public double getMaxX()
+        {
+            return h;
+        } // end method getMaxX
         
         public double getValueAtX(double x)
         {
             double y = (k * Math.sqrt(h*h - x*x)) / h;
             return y;
         }
+
+        /**
+         * Inverse of getValueAtX.
+         * @param y y value
+         * @return positive x value on the ellipse, NaN if |y| &gt; k
+         */
+        public double getXAtY(double y)
+        {
+            return (h * Math.sqrt(k*k - y*y)) / k;
+        } // end method getXAtY
+
+        /**
+         * Evaluates getValueAtX for many x values at once.
+         * @param xs x values
+         * @param out receives the y values, at least as long as xs
+         */
+        public void sample(double[] xs, double[] out)
+        {
+            double kOverH = k / h;
+            double hh = h * h;
+            for (int i = 0; i < xs.length; i++)
+            {
+                out[i] = kOverH * Math.sqrt(hh - xs[i] * xs[i]);
+            } // end for xs
+        } // end method sample
+
+        /**
+         * Tests whether a point is inside of (or on) the ellipse.
+         * @param x x value
+         * @param y y value
+         * @return true if inside
+         */
+        public boolean contains(double x, double y)
+        {
+            return x*x*k*k + y*y*h*h <= h*h*k*k;
+        } // end method contains
+
+        /**
+         * Finds the first point at which a ray touches the ellipse.
+         * @param ox x of the origin of the ray
+         * @param oy y of the origin of the ray
+         * @param dx x direction of the ray
+         * @param dy y direction of the ray
+         * @return smallest t &gt;= 0 such that (ox + t*dx, oy + t*dy) is on
+         * the ellipse, NaN if there is none
+         */
+        public double intersectRay(double ox, double oy, double dx, double dy)
+        {
+            double a = dx*dx*k*k + dy*dy*h*h;
+            double b = 2 * (ox*dx*k*k + oy*dy*h*h);
+            double c = ox*ox*k*k + oy*oy*h*h - h*h*k*k;
+            double disc = b*b - 4*a*c;
+            if (a == 0 || disc < 0)
+            {
+                return Double.NaN;
+            } // end if no intersection
+
+            double root = Math.sqrt(disc);
+            double t1 = (-b - root) / (2*a);
+            double t2 = (-b + root) / (2*a);
+            if (t1 >= 0)
+            {
+                return t1;
+            } // end if first root ahead
+            return t2 >= 0 ? t2 : Double.NaN;
+        } // end method intersectRay
+
+        /**
+         * Finds the last point at which a ray touches the ellipse, which is
+         * where it leaves the ellipse.
+         * @param ox x of the origin of the ray
+         * @param oy y of the origin of the ray
+         * @param dx x direction of the ray
+         * @param dy y direction of the ray
+         * @return largest t &gt;= 0 such that (ox + t*dx, oy + t*dy) is on
+         * the ellipse, NaN if there is none
+         */
+        public double exitRay(double ox, double oy, double dx, double dy)
+        {
+            double a = dx*dx*k*k + dy*dy*h*h;
+            double b = 2 * (ox*dx*k*k + oy*dy*h*h);
+            double c = ox*ox*k*k + oy*oy*h*h - h*h*k*k;
+            double disc = b*b - 4*a*c;
+            if (a == 0 || disc < 0)
+            {
+                return Double.NaN;
+            } // end if no intersection
+
+            double t = (-b + Math.sqrt(disc)) / (2*a);
+            return t >= 0 ? t : Double.NaN;
+        } // end method exitRay
+
+        /**
+         * Finds the first point at which a line segment touches the ellipse.
+         * @param x0 x of the start of the segment
+         * @param y0 y of the start of the segment
+         * @param x1 x of the end of the segment
+         * @param y1 y of the end of the segment
+         * @return fraction of the way along the segment, between 0 and 1,
+         * NaN if the segment does not touch the ellipse
+         */
+        public double intersectSegment(double x0, double y0, double x1, double y1)
+        {
+            double t = intersectRay(x0, y0, x1 - x0, y1 - y0);
+            return t <= 1 ? t : Double.NaN;
+        } // end method intersectSegment
     } // end ellispe class
 }
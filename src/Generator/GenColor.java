@@ -28,6 +28,7 @@ package Generator;
  * @author pthom
  * 
  * A very simple class to simply contain the colors used in the project.
+ * These are the defaults: renders take a Palette, see Palette.defaults.
  */
 public class GenColor
 {
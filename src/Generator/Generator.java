@@ -26,8 +26,10 @@ package Generator;
 // imports
 import java.awt.Color;
 import java.awt.Graphics2D;
+import java.awt.Rectangle;
 import java.awt.RenderingHints;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
 
 /**
  * Generates an array that displays a leaf
@@ -37,12 +39,18 @@ import java.awt.image.BufferedImage;
 public class Generator
 {
 
-    // Global variables per Generator
-    public Boolean[][] leafArray;
-    public Generator.Veins veins;
-    public Generator.Lamina lamina;
+    // Global variables per Generator, none of them change after the
+    // constructor, so one leaf can be rendered by several threads at once
+    private LeafMask leafMask;          // built lazily, see getLeafMask
+    private final LeafSpec spec;
+    final int width;
+    final int height;
+    public final Generator.Veins veins;
+    public final Generator.Lamina lamina;
+    private final VeinGeometry veinGeometry;
+    private final GeometryCache.Entry cacheEntry;   // null when not cached
 
-    double[] primaryVeinGenParams;
+    final double[] primaryVeinGenParams;
 
     /**
      * Constructor for LeafArrayGenerator
@@ -55,7 +63,10 @@ public class Generator
      * @param midribOffsetProportion how far the midrib is from the edge of the
      * image
      * @param primaryVeinsStyle the style of the primary veins
-     * @param primaryVeinsParameters the parameters of the primary veins
+     * @param primaryVeinsParameters the parameters of the primary veins,
+     * copied
+     * @param laminaStyle the style of the lamina
+     * @param laminaArgs the parameters of the lamina, copied
      */
     public Generator(
             // image
@@ -72,58 +83,337 @@ public class Generator
             String laminaStyle,
             double[] laminaArgs)
     {
-        // initialize the leaf array
-        leafArray = new Boolean[height][width];
-        this.primaryVeinGenParams = primaryVeinsParameters;
+        this(new LeafSpec(width, height, midribLengthProportion,
+                midribOffsetProportion, primaryVeinsStyle,
+                primaryVeinsParameters, laminaStyle, laminaArgs),
+                midribActualLength, null);
+    } // end LeafArrayGenerator constructor
 
-        for (int h = 0; h < leafArray.length; h += 1)
-        {
-            for (int w = 0; w < leafArray[0].length; w += 1)
-            {
-                leafArray[h][w] = false;
-            } // end for w values
-        } // end for h values
+    /**
+     * Builds the leaf a spec describes.
+     * @param spec parameters of the leaf
+     */
+    public Generator(LeafSpec spec)
+    {
+        this(spec, null);
+    } // end constructor
+
+    /**
+     * Builds the leaf a spec describes, taking its veins and margin from a
+     * cache. Leaves that differ by less than a pixel share one entry, built
+     * from their rounded parameters, see createCacheEntry.
+     * @param spec parameters of the leaf
+     * @param cache cache to share geometry through, null to build it
+     */
+    public Generator(LeafSpec spec, GeometryCache cache)
+    {
+        this(spec, 1, cache);  // midrib actual length (unused)
+    } // end constructor
+
+    private Generator(LeafSpec spec, double midribActualLength,
+            GeometryCache cache)
+    {
+        this.spec = spec;
+        this.width = spec.width;
+        this.height = spec.height;
+        String primaryVeinsStyle = spec.primaryVeinsStyle;
+        double[] primaryVeinsParameters = spec.primaryVeinParameters();
+        this.primaryVeinGenParams = primaryVeinsParameters;
 
         // create the vein structures
         veins = new Generator.Veins(
-                this.leafArray,
-                midribLengthProportion,
+                width,
+                spec.midribLengthProportion,
                 midribActualLength,
-                midribOffsetProportion,
+                spec.midribOffsetProportion,
                 primaryVeinsStyle);
         
         // create lamina
         this.lamina = new Generator.Lamina(
-                leafArray, 
                 this.veins.midrib, 
-                laminaStyle, 
-                laminaArgs
+                spec.laminaStyle, 
+                spec.laminaArgs(),
+                MarginStyle.forName(spec.marginStyle)
         );
-        
-        // update the boolean leaf itself by "casting" the leaf onto the array
-        leafArray = veins.midrib.castMidrib(leafArray);
-        leafArray = veins.primaryVeins.castVeins(leafArray, primaryVeinsParameters, veins.midrib);
-    } // end LeafArrayGenerator constructor
+
+        // work out the veins once for the mask, the image and any exporter,
+        // or take them from the rounded parameters shared with every leaf
+        // that only differs by less than a pixel
+        if (cache == null)
+        {
+            this.veinGeometry = veins.primaryVeins.buildGeometry(
+                    primaryVeinsParameters,
+                    veins.midrib,
+                    lamina);
+            this.cacheEntry = null;
+        } // end if not cached
+        else
+        {
+            this.cacheEntry = cache.get(
+                    createCacheKey(primaryVeinsStyle, primaryVeinsParameters),
+                    Generator::createCacheEntry);
+            this.veinGeometry = cacheEntry.getVeins();
+        } // end else cached
+
+        // the leaf mask is only cast when someone asks for it, so image-only
+        // renders never allocate it
+    } // end constructor
+
+    /**
+     * Rounds the parameters of this leaf to its pixels. Lengths become
+     * whole pixels and the vein angle a multiple of 1 / midrib length
+     * radians, which moves the tip of a vein less than a pixel.
+     * @param style style of the primary veins
+     * @param primaryVeinsParameters parameters of the primary veins
+     * @return key of this leaf in a GeometryCache
+     */
+    private GeometryCache.Key createCacheKey(String style,
+            double[] primaryVeinsParameters)
+    {
+        Veins.Midrib midrib = veins.midrib;
+        int[] values = new int[8 + primaryVeinsParameters.length];
+        values[0] = width;
+        values[1] = height;
+        values[2] = midrib.startOffset;
+        values[3] = midrib.length;
+        values[4] = (int) Math.round(lamina.getBreadth());
+        values[5] = lamina.getRiseEnd();
+        values[6] = lamina.getFallStart();
+        values[7] = lamina.getTipX();
+        if (primaryVeinsParameters.length > 0)
+        {
+            values[8] = (int) primaryVeinsParameters[0];
+        } // end if vein count
+        if (primaryVeinsParameters.length > 1)
+        {
+            values[9] = (int) Math.round(
+                    Math.toRadians(primaryVeinsParameters[1]) * midrib.length);
+        } // end if vein angle
+        for (int i = 2; i < primaryVeinsParameters.length; i++)
+        {
+            values[8 + i] = (int) Math.round(
+                    primaryVeinsParameters[i] * midrib.length);
+        } // end for vein lengths
+        return new GeometryCache.Key(style + "/" + spec.marginStyle, values);
+    } // end createCacheKey
+
+    /**
+     * Builds the veins and the margin of a cache key from the key alone:
+     * the leaf the rounded values of createCacheKey describe. Every leaf
+     * with the key gets this geometry, whichever of them came first.
+     * @param key key made by createCacheKey
+     * @return entry of the key
+     */
+    private static GeometryCache.Entry createCacheEntry(GeometryCache.Key key)
+    {
+        String style = key.getStyle();
+        int split = style.lastIndexOf('/');
+        MarginStyle margin = MarginStyle.forName(style.substring(split + 1));
+
+        int[] values = key.getValues();
+        int centerY = values[1] / 2;
+        int startOffset = values[2];
+        int length = values[3];
+        int breadth = values[4];
+        int riseEnd = values[5];
+        int fallStart = values[6];
+        int tipX = values[7];
+        LaminaRasterizer rasterizer = new LaminaRasterizer(
+                startOffset,
+                new EllipseMath.Ellipse(riseEnd - startOffset, breadth / 2.0),
+                fallStart,
+                new EllipseMath.Ellipse(tipX - fallStart, breadth / 2.0),
+                centerY,
+                margin,
+                margin.period * length,
+                margin.depth * breadth);
+
+        // back to vein parameters in proportion to the midrib
+        double[] parameters = new double[values.length - 8];
+        double perPixel = length > 0 ? 1.0 / length : 0;
+        if (parameters.length > 0)
+        {
+            parameters[0] = values[8];
+        } // end if vein count
+        if (parameters.length > 1)
+        {
+            parameters[1] = Math.toDegrees(values[9] * perPixel);
+        } // end if vein angle
+        for (int i = 2; i < parameters.length; i++)
+        {
+            parameters[i] = values[8 + i] * perPixel;
+        } // end for vein lengths
+
+        return new GeometryCache.Entry(
+                buildVeins(style.substring(0, split), parameters,
+                        startOffset, length, centerY, rasterizer),
+                rasterizer);
+    } // end createCacheEntry
+
+    /**
+     * Works out the segments of the primary veins of a style.
+     * @param style style of the primary veins, like "pinnate"
+     * @param parameters parameters of the primary veins
+     * @param midribStart x of the start of the midrib
+     * @param midribLength length of the midrib in pixels
+     * @param midribY y of the midrib
+     * @param margin rasterizer of the margin that cuts off the veins
+     * @return geometry of the veins
+     */
+    private static VeinGeometry buildVeins(String style, double[] parameters,
+            int midribStart, int midribLength, int midribY,
+            LaminaRasterizer margin)
+    {
+        // choose style
+        if ("pinnate".equals(style))
+        {
+            /*
+             * Generation parameters:
+             * 0:	Number of branching veins on each side
+             * 1:	Angle (in degrees) of the branching veins
+             * 2+:	Lengths of the veins for each vein
+             */
+            return VeinGeometry.pinnate(
+                    parameters,
+                    midribStart,
+                    midribLength,
+                    midribY,
+                    margin);
+        } // end if pinnate
+
+        // "parallel" and anything else have no primary veins yet
+        return new VeinGeometry(new float[0]);
+    } // end buildVeins
+
+    /**
+     * @return the parameters this leaf was built from
+     */
+    public LeafSpec getSpec()
+    {
+        return spec;
+    } // end getSpec
+
+    public int getWidth()
+    {
+        return width;
+    } // end getWidth
+
+    public int getHeight()
+    {
+        return height;
+    } // end getHeight
+
+    /**
+     * Gets the part of the image the leaf is drawn into: from the start of
+     * the midrib to the tip, and the breadth of the lamina around the
+     * midrib, and the teeth of the margin. Leaves room for the antialiased
+     * edge.
+     * @return bounding box of the leaf in pixels, inside of the image
+     */
+    public Rectangle getLeafBounds()
+    {
+        double halfBreadth = lamina.getBreadth() / 2.0 + lamina.getToothDepth();
+        int centerY = height / 2;
+        int x0 = veins.midrib.startOffset - 1;
+        int x1 = Math.max(lamina.getTipX(),
+                veins.midrib.startOffset + veins.midrib.length) + 1;
+        int y0 = (int) Math.floor(centerY - halfBreadth) - 1;
+        int y1 = (int) Math.ceil(centerY + halfBreadth) + 1;
+
+        Rectangle bounds = new Rectangle(x0, y0, x1 - x0 + 1, y1 - y0 + 1);
+        return bounds.intersection(new Rectangle(0, 0, width, height));
+    } // end getLeafBounds
+
+    /**
+     * Gets the leaf without its pixel size, to rasterize it at other sizes.
+     * @return geometry of the leaf in normalized units
+     */
+    public LeafGeometry getGeometry()
+    {
+        return spec.createGeometry();
+    } // end getGeometry
+
+    /**
+     * Gets the primary veins of the leaf as line segments in pixels.
+     * @return geometry of the primary veins
+     */
+    public VeinGeometry getVeinGeometry()
+    {
+        return veinGeometry;
+    } // end getVeinGeometry
+
+    /**
+     * Gets the mask of the leaf, "casting" the midrib and veins onto a new
+     * mask the first time it is asked for.
+     * @return mask of the leaf
+     */
+    public synchronized LeafMask getLeafMask()
+    {
+        if (leafMask == null)
+        {
+            leafMask = castLeafMask(new LeafMask(width, height));
+        } // end if not cast yet
+
+        return leafMask;
+    } // end getLeafMask
+
+    /**
+     * Casts the midrib and veins onto a mask the caller owns, clearing it
+     * first, so a writer can reuse one mask for many leaves instead of
+     * keeping a mask per leaf.
+     * @param mask mask of the size of the leaf
+     * @return mask
+     */
+    public LeafMask castLeafMask(LeafMask mask)
+    {
+        if (mask.getWidth() != width || mask.getHeight() != height)
+        {
+            throw new IllegalArgumentException("Need a " + width + "x"
+                    + height + " mask");
+        } // end if wrong mask
+
+        mask.clear();
+        mask = veins.midrib.castMidrib(mask);
+        return veins.primaryVeins.castVeins(mask, veinGeometry);
+    } // end castLeafMask
+
+    /**
+     * Adapter for callers that still want the old boxed leaf array.
+     * @return a new Boolean[height][width] copy of the leaf mask
+     */
+    public Boolean[][] getLeafArray()
+    {
+        return getLeafMask().toBooleanArray();
+    } // end getLeafArray
 
     /**
      * Print the leaf array in text form to sys out
      */
     public void printBoolean()
     {
-        for (int h = 0; h < leafArray.length; h += 1)
+        LeafMask leafMask = getLeafMask();
+        StringBuilder line = new StringBuilder(leafMask.getWidth() + 1);
+        for (int h = 0; h < leafMask.getHeight(); h += 1)
         {
-            for (int w = 0; w < leafArray[0].length; w += 1)
+            line.setLength(0);
+            if (!leafMask.testRow(h))
             {
-                if (leafArray[h][w] == true)
+                // skip the per cell lookups for empty rows
+                for (int w = 0; w < leafMask.getWidth(); w += 1)
                 {
-                    System.out.print("#");
-                } else
+                    line.append('.');
+                } // end for w values
+            } // end if row is empty
+            else
+            {
+                for (int w = 0; w < leafMask.getWidth(); w += 1)
                 {
-                    System.out.print(".");
-                }
-            } // end for w values
+                    line.append(leafMask.get(w, h) ? '#' : '.');
+                } // end for w values
+            } // end else
 
-            System.out.print("\n");
+            line.append('\n');
+            System.out.print(line);
         } // end for h values
     } // end printBoolean
 
@@ -133,71 +423,112 @@ public class Generator
      */
     public BufferedImage createBufferedImage()
     {
-        // initialize the buffered image
-        BufferedImage outputImage = new BufferedImage(
-                leafArray[0].length,
-                leafArray.length,
-                BufferedImage.TYPE_INT_ARGB);
-        
+        return createBufferedImage(true);
+    } // end createBufferedImage
+
+    /**
+     * Creates a buffered image object for saving to the hard drive.
+     * @param antialias whether the edges of the leaf are antialiased
+     * @return BufferedImage of generated leaf
+     */
+    public BufferedImage createBufferedImage(boolean antialias)
+    {
+        return createBufferedImage(RenderContext.fromDefaults(antialias));
+    } // end createBufferedImage
+
+    /**
+     * Creates a buffered image object for saving to the hard drive.
+     * @param context colors and antialiasing to draw with
+     * @return BufferedImage of generated leaf
+     */
+    public BufferedImage createBufferedImage(RenderContext context)
+    {
+        return createBufferedImage(
+                new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB),
+                context);
+    } // end createBufferedImage
+
+    /**
+     * Renders the leaf into an existing image with the GenColor colors.
+     * @param outputImage int ARGB image of the size of the leaf
+     * @param antialias whether the edges of the leaf are antialiased
+     * @return outputImage
+     */
+    public BufferedImage createBufferedImage(BufferedImage outputImage,
+            boolean antialias)
+    {
+        return createBufferedImage(outputImage,
+                RenderContext.fromDefaults(antialias));
+    } // end createBufferedImage
+
+    /**
+     * Renders the leaf into an existing image, for example one from a
+     * RasterPool. Every pixel is written, so the image does not need to be
+     * cleared first. Only reads this leaf and the context, so any number
+     * of threads may render the same leaf into their own images.
+     * @param outputImage int ARGB image of the size of the leaf
+     * @param context colors and antialiasing to draw with
+     * @return outputImage
+     */
+    public BufferedImage createBufferedImage(BufferedImage outputImage,
+            RenderContext context)
+    {
+        if (outputImage.getType() != BufferedImage.TYPE_INT_ARGB
+                || outputImage.getWidth() != width
+                || outputImage.getHeight() != height)
+        {
+            throw new IllegalArgumentException("Need a " + width + "x"
+                    + height + " TYPE_INT_ARGB image");
+        } // end if wrong image
+
+        Palette palette = context.palette;
+        boolean antialias = context.antialias;
+
+        // fill the lamina and the background straight into the pixels,
+        // one span per color per scanline, overwriting the whole image
+        int[] pixels = ((DataBufferInt) outputImage.getRaster().getDataBuffer()).getData();
+        LaminaRasterizer rasterizer = cacheEntry != null
+                ? cacheEntry.getRasterizer()
+                : this.lamina.getRasterizer();
+        double[] spans = cacheEntry != null
+                ? cacheEntry.getSpans(width, height, antialias)
+                : rasterizer.computeSpans(width, height, antialias);
+        rasterizer.render(
+                pixels,
+                width,
+                height,
+                palette.lamina.getRGB(),
+                palette.background.getRGB(),
+                antialias,
+                spans,
+                context.createTexture(spec.textureSeed, height, height / 2,
+                        this.lamina.getBreadth() / 2.0));
+
         // created the associated graphics object to draw to
         Graphics2D g2 = outputImage.createGraphics();
 
         // turn on antialiasing
-        g2.setRenderingHint(
-                RenderingHints.KEY_ANTIALIASING, 
-                RenderingHints.VALUE_ANTIALIAS_ON);
-        
-        // set the background's color
-        g2.setColor(GenColor.lamina);
-        g2.fillRect(0, 0, leafArray[0].length, leafArray.length);
+        if (antialias)
+        {
+            g2.setRenderingHint(
+                    RenderingHints.KEY_ANTIALIASING, 
+                    RenderingHints.VALUE_ANTIALIAS_ON);
+        } // end if antialias
 
         // get the data to draw the midrib from the midrib
-        int[][] midribData = this.veins.midrib.getMidribPoints(leafArray);
+        int[][] midribData = this.veins.midrib.getMidribPoints();
+
+        // keep the end of the midrib inside of the tip of the leaf
+        midribData[0][1] = Math.min(midribData[0][1], this.lamina.getTipX() - 1);
 
         // draw midrib
-        g2.setColor(GenColor.midrib);
+        g2.setColor(palette.midrib);
         g2.drawPolyline(midribData[0], midribData[1], midribData.length);
         
         // draw primary veins using built in method
-        this.veins.primaryVeins.drawVeins(leafArray, 
-                this.primaryVeinGenParams, 
-                this.veins.midrib, 
-                this.lamina,
-                g2);
-        
-        // draw margin of lamina using built in method
-        g2.setColor(GenColor.lamina);
-        this.lamina.styles.drawLinear(g2);
-        
-        // fill the rest of the image that isn't leaf
-        g2.setColor(GenColor.background);
-        // left and right sides of the image
-        g2.fillRect(
-                0, 
-                0, 
-                this.veins.midrib.startOffset, 
-                leafArray.length
-        );
-        g2.fillRect(
-                this.veins.midrib.startOffset + this.veins.midrib.length - 1, 
-                0, 
-                leafArray[0].length, 
-                leafArray.length
-        );
-        
-        // now top and bottom
-        g2.fillRect(
-                0,
-                0,
-                leafArray[0].length,
-                (int) ((leafArray.length - lamina.args[0] * leafArray.length)/2)
-        );
-        g2.fillRect(
-                0,
-                (int) ((leafArray.length/2 + lamina.args[0] * leafArray.length / 2)),
-                leafArray[0].length,
-                leafArray.length
-        );
+        this.veins.primaryVeins.drawVeins(this.veinGeometry, g2, palette.veins);
+        g2.dispose();
+
         return outputImage;
     } // end createBufferedImage
 
@@ -208,13 +539,13 @@ public class Generator
     public class Veins
     {
         // have variables for the types of veins
-        Generator.Veins.Midrib midrib;
-        Generator.Veins.PrimaryVeins primaryVeins;
+        final Generator.Veins.Midrib midrib;
+        final Generator.Veins.PrimaryVeins primaryVeins;
 
         /**
          * Constructor. Creates the types of veins needed in one interface
          * as long as the correct parameters are given in full.
-         * @param leafArray The boolean array of the leaf 
+         * @param width The width of the leaf image
          * @param midribLengthProportion The length of the midrib in proportion
          * to the width of the array
          * @param midribActualLength The actual length of the midrib. Unused.
@@ -224,7 +555,7 @@ public class Generator
          * string such as "pinnate" or "parallel"
          */
         public Veins(
-                Boolean[][] leafArray,
+                int width,
                 double midribLengthProportion,
                 double midribActualLength,
                 double midribOffsetProportion,
@@ -234,12 +565,12 @@ public class Generator
             midrib = new Generator.Veins.Midrib(
                     midribLengthProportion,
                     midribActualLength,
-                    (int) leafArray[0].length,
+                    width,
                     midribOffsetProportion);
             
             // create primary veins
             primaryVeins = new Generator.Veins.PrimaryVeins(
-                    leafArray,
+                    width,
                     midrib.startOffset,
                     primaryVeinsStyle);
         } // end Veins
@@ -250,12 +581,12 @@ public class Generator
         public class Midrib
         {
             // variables
-            double lengthProportion;
-            double actualLength;        // unused
-            int length;                 // length in pixels
+            final double lengthProportion;
+            final double actualLength;  // unused
+            final int length;           // length in pixels
  
-            double startOffsetProportion;
-            int startOffset;            // in pixels
+            final double startOffsetProportion;
+            final int startOffset;      // in pixels
 
             public final int DEFAULT_WIDTH = 1;
 
@@ -284,41 +615,32 @@ public class Generator
              * Takes the current midrib parameters and prints them on top of a
              * given array.
              *
-             * @param leafArray Array to edit
-             * @return Edited array
+             * @param leafMask Mask to edit
+             * @return Edited mask
              */
-            public Boolean[][] castMidrib(Boolean[][] leafArray)
+            public LeafMask castMidrib(LeafMask leafMask)
             {
-                int height = leafArray.length / 2;
+                int height = leafMask.getHeight() / 2;
                 int startX = this.startOffset;
                 int endX = this.startOffset + this.length;
 
-                for (int h = 0; h < height + DEFAULT_WIDTH + 1; h += 1)
+                // rows just below the center, excluding both end points
+                for (int h = height + 1; h < height + DEFAULT_WIDTH + 1; h += 1)
                 {
-                    for (int w = 0; w < leafArray[0].length; w += 1)
-                    {
-                        if (h > height)
-                        {
-                            if (w > startX && w < endX)
-                            {
-                                leafArray[h - 1][w] = true;
-                            } // end if width is good
-                        } // end if height is good
-                    } // end for w values
+                    leafMask.fillRow(h - 1, startX + 1, endX);
                 } // end for h values
 
-                return leafArray;
+                return leafMask;
             } // end castMidrib
 
             /**
              * Get the start and stop positions of the midrib for use with
              * drawing onto graphics objects.
-             * @param leafArray boolean array of leaf
              * @return integers [][] of {{x1, x2}, {y1, y2}}
              */
-            public int[][] getMidribPoints(Boolean[][] leafArray)
+            public int[][] getMidribPoints()
             {
-                int height = leafArray.length / 2;
+                int height = Generator.this.height / 2;
                 int startX = this.startOffset;
                 int endX = this.startOffset + this.length;
 
@@ -344,188 +666,74 @@ public class Generator
             /**
              * Possible styles: pinnate
              */
-            String style;
-            int startOffsetX;
-            int startOffsetY;
+            final String style;
+            final int startOffsetX;
+            final int startOffsetY;
 
             /**
              * Constructor for the primary veins.
-             * @param leafArray Boolean array of leaf
+             * @param width width of the leaf image
              * @param startOffset How far the midrib starts from the edge
              * @param style String style of the primary veins, like "pinnate"
              */
-            public PrimaryVeins(Boolean[][] leafArray, int startOffset, String style)
+            public PrimaryVeins(int width, int startOffset, String style)
             {
                 this.style = style;
                 this.startOffsetX = startOffset;
-                this.startOffsetY = leafArray[0].length;
+                this.startOffsetY = width;
             } // end PrimaryVeins constructor
 
             /**
-             * Draws the veins to the leaf array.
-             * @param leafArray The boolean array of the leaf
+             * Works out the segments of the veins once, already cut off at
+             * the margin, for the caster, the renderer and any exporter.
              * @param generationParameters Parameters
              * @param midrib the midrib object for the leaf
-             * @return leaf array of boolean[][]
+             * @param lamina the lamina whose margin cuts off the veins
+             * @return geometry of the veins
              */
-            public Boolean[][] castVeins(
-                    Boolean[][] leafArray,
+            public VeinGeometry buildGeometry(
                     double[] generationParameters,
-                    Generator.Veins.Midrib midrib)
+                    Generator.Veins.Midrib midrib,
+                    Lamina lamina)
             {
-                // choose style
-                if ("pinnate".equals(style))
-                {
-                    /*
-                     * Generation parameters:
-                     * 0:	Number of branching veins on each side
-                     * 1:	Angle (in degrees) of the branching veins
-                     * 2+:	Lengths of the veins for each vein
-                     */
-                    int numBranchingVeins = (int) generationParameters[0];
-                    double[] branchPositions = new double[numBranchingVeins];
-                    double angleOfVeins = generationParameters[1];
-                    double xUnit = Math.cos(Math.toRadians(angleOfVeins));
-                    double yUnit = Math.sin(Math.toRadians(angleOfVeins));
-                    double[] branchLengths = new double[numBranchingVeins];
-
-                    for (int i = 0; i < numBranchingVeins; i++)
-                    {
-                        branchLengths[i] = generationParameters[i + 2] * midrib.length;
-
-                        branchPositions[i] = midrib.startOffset
-                                + ( // (i+1.0)*(midrib.length / ((float) (numBranchingVeins)))
-                                (midrib.length / ((float) (numBranchingVeins + 1))) * (i + 1));
-                    } // end for loop
-
-                    // draw veins onto array
-                    for (int i = 0; i < numBranchingVeins; i++)
-                    {
-                        int xStart = (int) Math.round(branchPositions[i]);
-                        int yStart = leafArray.length / 2;
-
-                        int xEnd = (int) Math.round(xStart + xUnit * branchLengths[i]);
-
-                        for (int j = xStart; j < xEnd; j++)
-                        {
-                            int yDiff = (int) Math.round(yUnit * branchLengths[i]
-                                    * ((float) j - xStart) / ((float) xEnd - xStart));
-
-                            // draw onto array
-                            try
-                            {
-                                leafArray[yStart + yDiff][j] = true;
-                            } // end try
-                            catch (ArrayIndexOutOfBoundsException ex) {}
-
-                            try
-                            {
-                                leafArray[yStart - yDiff][j] = true;
-                            } // end try
-                            catch (ArrayIndexOutOfBoundsException ex) {} // end catch out of index
-                        } // end for i between endpoints
-                    } // end for loop
-                } // end if pinnate
-                
-                else if ("parallel".equals(style))
-                {
-                    
-                } // end else if style is "parallel"
+                return buildVeins(style, generationParameters,
+                        midrib.startOffset, midrib.length, height / 2,
+                        lamina.getRasterizer());
+            } // end buildGeometry
 
-                return leafArray;
+            /**
+             * Draws the veins to the leaf mask.
+             * @param leafMask The mask of the leaf
+             * @param geometry the geometry of the veins
+             * @return leaf mask
+             */
+            public LeafMask castVeins(LeafMask leafMask, VeinGeometry geometry)
+            {
+                return geometry.cast(leafMask);
             } // end castVeins
             
             /**
              * Draw the veins to a graphics object.
-             * @param leafArray Boolean array of leaf
-             * @param generationParameters Parameters that dictate the
-             * generation of the leaf
-             * @param midrib The midrib object
-             * @param lamina Lamina object
+             * @param geometry the geometry of the veins
              * @param g2 The graphics object to draw to
-             * @return leaf array
              */
-            public Boolean[][] drawVeins(
-                    Boolean[][] leafArray,
-                    double[] generationParameters,
-                    Generator.Veins.Midrib midrib,
-                    Lamina lamina,
-                    Graphics2D g2)
+            public void drawVeins(VeinGeometry geometry, Graphics2D g2)
             {
-                // choose style
-                if ("pinnate".equals(style))
-                {
-                    /*
-					 * Generation parameters:
-					 * 0:	Number of branching veins on each side
-					 * 1:	Angle (in degrees) of the branching veins
-					 * 2+:	Lengths of the veins for each vein
-                     */
-                    int numBranchingVeins = (int) generationParameters[0];
-                    double[] branchPositions = new double[numBranchingVeins];
-                    double angleOfVeins = generationParameters[1];
-                    double xUnit = Math.cos(Math.toRadians(angleOfVeins));
-                    double yUnit = Math.sin(Math.toRadians(angleOfVeins));
-                    double[] branchLengths = new double[numBranchingVeins];
-
-                    for (int i = 0; i < numBranchingVeins; i++)
-                    {
-                        branchLengths[i] = generationParameters[i + 2] * midrib.length;
+                drawVeins(geometry, g2, GenColor.veins);
+            } // end drawVeins
 
-                        branchPositions[i] = midrib.startOffset
-                                + ( // (i+1.0)*(midrib.length / ((float) (numBranchingVeins)))
-                                (midrib.length / ((float) (numBranchingVeins + 1))) * (i + 1));
-                    } // end for loop
-                    
-                    
-                    // find the relative breadth of the leaf
-                    int relBreadth = (int) (leafArray.length/2 * lamina.args[0]);
-
-                    // draw veins onto array
-                    for (int i = 0; i < numBranchingVeins; i++)
-                    {
-                        int xStart = (int) Math.round(branchPositions[i]);
-                        int yStart = leafArray.length / 2;
-
-                        int xEnd = (int) Math.round(xStart + xUnit * branchLengths[i]);
-                        int yEnd1 = (int) (yStart - yUnit * branchLengths[i]);
-                        int yEnd2 = (int) Math.round(yStart + yUnit * branchLengths[i]);
-                        
-                        /*
-                        To correct for the margin of the lamina, the breadth of 
-                        the leaf must be known. Then, both the x and y components
-                        of the line segment show be scaled. To scale, the y
-                        component is scaled to the raw breadth first, then the
-                        x component. Next, if the new x is in the range of the
-                        rise or fall of the margin, a new y will be calculated
-                        based on the ellipse formed.
-                        */
-                        
-                        // if the end of the vein extends past the margin
-                        if ((yStart-yEnd1) > relBreadth)
-                        {
-                            double oldXDiff = xEnd-xStart;
-                            double newXDiff;
-                            double oldYDiff = yEnd2-yStart;
-                            double newYDiff = relBreadth;
-                           
-                            double changeFact = newYDiff/oldYDiff;
-                            newXDiff = changeFact * oldXDiff;
-                            
-                            xEnd = (int) (xStart + newXDiff); 
-                            yEnd1 = (int) (yStart - newYDiff + 1);
-                            yEnd2 = (int) (yStart + newYDiff - 1);                            
-                        } // end if the edge of the vein extends past the margin
-
-                        g2.setColor(GenColor.veins);
-                        g2.drawLine(xEnd, yEnd1, xStart, yStart);
-                        g2.drawLine(xStart, yStart, xEnd, yEnd2);
-                    } // end for loop
-
-                } // end if pinnate
-
-                return leafArray;
-            } // end castVeins
+            /**
+             * Draw the veins to a graphics object in the given color.
+             * @param geometry the geometry of the veins
+             * @param g2 The graphics object to draw to
+             * @param color color of the veins
+             */
+            public void drawVeins(VeinGeometry geometry, Graphics2D g2,
+                    Color color)
+            {
+                g2.setColor(color);
+                geometry.draw(g2);
+            } // end drawVeins
         } // end PrimaryVeins
     } // end Veins
     
@@ -536,37 +744,160 @@ public class Generator
     {
         // extra layer to differentiate between leaf blade and veins
         public boolean[][] laminaArray;
-        public Generator.Lamina.Styles styles;
+        public final Generator.Lamina.Styles styles;
         
         // variables to store from superclass and such
-        private Boolean[][] leafArray;
-        private Generator.Veins.Midrib midrib;
-        private String style;
-        private double[] args;
+        private final Generator.Veins.Midrib midrib;
+        private final String style;
+        private final double[] args;
+        private final MarginStyle margin;
         
-        // ellipse stuff
-        public EllipseMath.Ellipse riseEllipse;
-        public EllipseMath.Ellipse fallEllipse;
+        // ellipse stuff, worked out once here and only read afterwards
+        public final EllipseMath.Ellipse riseEllipse;
+        public final EllipseMath.Ellipse fallEllipse;
+        private final int riseEnd;            // x where the rise ellipse ends
+        private final int distMarginToFall;   // x where the fall ellipse starts
         
-        public Lamina(Boolean[][] leafArray, Generator.Veins.Midrib midrib, 
+        public Lamina(Generator.Veins.Midrib midrib, 
                 String style, double[] args)
+        {
+            this(midrib, style, args, MarginStyle.SMOOTH);
+        } // end constructor
+
+        /**
+         * Constructor.
+         * @param midrib midrib of the leaf
+         * @param style style of the lamina, "linear"
+         * @param args {breadth, end of rise, start of fall}
+         * @param margin pattern of the margin
+         */
+        public Lamina(Generator.Veins.Midrib midrib, 
+                String style, double[] args, MarginStyle margin)
         {
             // stored variables from constructor
-            this.leafArray = leafArray;
             this.midrib = midrib;
             this.style = style;
             this.args = args;
+            this.margin = margin;
+
+            // the margin of a linear lamina, same as drawLinear uses
+            double breadth = args[0] * height;
+            int riseLength = (int) (args[1] * midrib.length);
+            int fallLength = (int) ((1 - args[2]) * midrib.length);
+            riseEllipse = new EllipseMath.Ellipse(riseLength, breadth / 2.0);
+            fallEllipse = new EllipseMath.Ellipse(fallLength, breadth / 2.0);
+            riseEnd = midrib.startOffset + riseLength;
+            distMarginToFall = (int) (midrib.startOffset + args[2] * midrib.length);
             
             styles = new Generator.Lamina.Styles();
         } // end constructor
+
+        /**
+         * Creates a rasterizer for the margin of a linear lamina, using the
+         * same rise and fall ellipses as drawLinear, with the teeth of the
+         * margin style on top.
+         * @return rasterizer of the lamina
+         */
+        public LaminaRasterizer getRasterizer()
+        {
+            return new LaminaRasterizer(
+                    midrib.startOffset,
+                    riseEllipse,
+                    distMarginToFall,
+                    fallEllipse,
+                    height / 2,
+                    margin,
+                    margin.period * midrib.length,
+                    getToothDepth());
+        } // end getRasterizer
+
+        /**
+         * @return pattern of the margin
+         */
+        public MarginStyle getMargin()
+        {
+            return margin;
+        } // end getMargin
+
+        /**
+         * @return how far the teeth stick out past the smooth margin, in
+         * pixels
+         */
+        public double getToothDepth()
+        {
+            return margin.depth * getBreadth();
+        } // end getToothDepth
+
+        /**
+         * @return width of the lamina across the midrib, in pixels
+         */
+        public double getBreadth()
+        {
+            return args[0] * height;
+        } // end getBreadth
+
+        /**
+         * @return x where the rise ellipse ends and the flat top begins
+         */
+        public int getRiseEnd()
+        {
+            return riseEnd;
+        } // end getRiseEnd
+
+        /**
+         * @return x where the flat top ends and the fall ellipse begins
+         */
+        public int getFallStart()
+        {
+            return distMarginToFall;
+        } // end getFallStart
+
+        /**
+         * Gets the x value of the right tip of the leaf, where the fall
+         * ellipse ends.
+         * @return x of the tip in pixels
+         */
+        public int getTipX()
+        {
+            return distMarginToFall + (int) fallEllipse.getH();
+        } // end getTipX
+
+        /**
+         * Finds how far a ray from inside of the leaf travels before it
+         * crosses the top half of the margin. The bottom half is a mirror
+         * image, so a vein going down only needs its y direction flipped.
+         * @param x x of the start of the ray, in pixels
+         * @param y y of the start of the ray, in pixels
+         * @param dx x direction of the ray, should be &gt;= 0
+         * @param dy y direction of the ray, negative is up
+         * @return distance along the ray in units of (dx, dy), infinite if
+         * the ray never crosses the margin
+         */
+        public double distanceToMargin(double x, double y, double dx, double dy)
+        {
+            return LeafGeometry.distanceToMargin(x, y, dx, dy, height / 2,
+                    riseEllipse, riseEnd, fallEllipse, distMarginToFall);
+        } // end distanceToMargin
         
+        /**
+         * Draws the margin of a linear lamina column by column with
+         * Graphics2D, clearing the background outside of it. The raster
+         * path in createBufferedImage replaced this, it is kept for drawing
+         * onto other graphics objects and for comparing against.
+         * @param g2 graphics object to draw to
+         */
+        void drawLinear(Graphics2D g2)
+        {
+            styles.drawLinear(g2, GenColor.background);
+        } // end drawLinear
+
         private class Styles
         {
-            public void drawLinear(Graphics2D g2)
+            public void drawLinear(Graphics2D g2, Color background)
             {
-                g2.setColor(GenColor.background);
+                g2.setColor(background);
                 
-                double breadth = args[0]*leafArray.length;
+                double breadth = args[0]*height;
                 double[] middleSection = {args[1], args[2]};
                 /*
                 Equation for an ellipse:
@@ -593,84 +924,83 @@ public class Generator
                         breadth / 2.0
                 );
                 
-                riseEllipse = rise;
-                fallEllipse = fall;
-                
                 // draw the flat, linear sides of the leaf
                 // bottom
                 g2.drawLine(
                         (int) (midrib.startOffset + midrib.length * middleSection[0]),
-                        (int) (leafArray.length/2 + breadth/2),
+                        (int) (height/2 + breadth/2),
                         (int) (midrib.startOffset + midrib.length * middleSection[1]),
-                        (int) (leafArray.length/2 + breadth/2)
+                        (int) (height/2 + breadth/2)
                 );
                 // top
                 g2.drawLine(
                         (int) (midrib.startOffset + midrib.length * middleSection[0]),
-                        (int) (leafArray.length/2 - breadth/2),
+                        (int) (height/2 - breadth/2),
                         (int) (midrib.startOffset + midrib.length * middleSection[1]),
-                        (int) (leafArray.length/2 - breadth/2)
+                        (int) (height/2 - breadth/2)
                 );
                 
                 // draw rise curve
-                for (double d = rise.getBounds()[0]+1; d < 0.0; d += 1.0)
+                double riseMinX = rise.getMinX();
+                for (double d = riseMinX+1; d < 0.0; d += 1.0)
                 {
                     g2.drawLine(
-                            (int) (midrib.startOffset + (d-rise.getBounds()[0]-1.0)),
-                            (int) (leafArray.length/2 - rise.getValueAtX(d-1.0)),
-                            (int) (midrib.startOffset + (d-rise.getBounds()[0])),
-                            (int) (leafArray.length/2 - rise.getValueAtX(d))
+                            (int) (midrib.startOffset + (d-riseMinX-1.0)),
+                            (int) (height/2 - rise.getValueAtX(d-1.0)),
+                            (int) (midrib.startOffset + (d-riseMinX)),
+                            (int) (height/2 - rise.getValueAtX(d))
                     );
                     g2.drawLine(
-                            (int) (midrib.startOffset + (d-rise.getBounds()[0]-1.0)),
-                            (int) (leafArray.length/2 + rise.getValueAtX(d-1.0)),
-                            (int) (midrib.startOffset + (d-rise.getBounds()[0])),
-                            (int) (leafArray.length/2 + rise.getValueAtX(d))
+                            (int) (midrib.startOffset + (d-riseMinX-1.0)),
+                            (int) (height/2 + rise.getValueAtX(d-1.0)),
+                            (int) (midrib.startOffset + (d-riseMinX)),
+                            (int) (height/2 + rise.getValueAtX(d))
                     );
                     
                     // draw lines that clear the leaf's background
                     g2.drawLine(
-                            (int) (midrib.startOffset + (d-rise.getBounds()[0])) - 1,
-                            (int) (leafArray.length/2 - rise.getValueAtX(d-1.0)) - 1,
-                            (int) (midrib.startOffset + (d-rise.getBounds()[0])) - 1,
+                            (int) (midrib.startOffset + (d-riseMinX)) - 1,
+                            (int) (height/2 - rise.getValueAtX(d-1.0)) - 1,
+                            (int) (midrib.startOffset + (d-riseMinX)) - 1,
                             (int) (0)
                     );
                     g2.drawLine(
-                            (int) (midrib.startOffset + (d-rise.getBounds()[0])) - 1,
-                            (int) (leafArray.length/2 + rise.getValueAtX(d-1.0)) + 1,
-                            (int) (midrib.startOffset + (d-rise.getBounds()[0])) - 1,
-                            (int) (leafArray.length)
+                            (int) (midrib.startOffset + (d-riseMinX)) - 1,
+                            (int) (height/2 + rise.getValueAtX(d-1.0)) + 1,
+                            (int) (midrib.startOffset + (d-riseMinX)) - 1,
+                            (int) (height)
                     );
                 } // end for loop
                 
                 // draw fall curve
-                for (double d = 0.0; d < fall.getBounds()[1]; d += 1.0)
+                double fallMaxX = fall.getMaxX();
+                for (double d = 0.0; d < fallMaxX; d += 1.0)
                 {
                     g2.drawLine(
                             (int) (distMarginToFall + d - 1.0),
-                            (int) (leafArray.length/2 - fall.getValueAtX(d-1.0)),
+                            (int) (height/2 - fall.getValueAtX(d-1.0)),
                             (int) (distMarginToFall + d),
-                            (int) (leafArray.length/2 - fall.getValueAtX(d))
+                            (int) (height/2 - fall.getValueAtX(d))
                     );
                     g2.drawLine(
                             (int) (distMarginToFall + d - 1.0),
-                            (int) (leafArray.length/2 + fall.getValueAtX(d-1.0)),
+                            (int) (height/2 + fall.getValueAtX(d-1.0)),
                             (int) (distMarginToFall + d),
-                            (int) (leafArray.length/2 + fall.getValueAtX(d))
+                            (int) (height/2 + fall.getValueAtX(d))
                     );
                     
                     // draw the lines that clear the backgroud
                     g2.drawLine(
                             (int) (distMarginToFall + d),
-                            (int) (leafArray.length/2 - fall.getValueAtX(d-1.0)),
+                            (int) (height/2 - fall.getValueAtX(d-1.0)),
                             (int) (distMarginToFall + d),
                             (int) (0)
                     );
                     g2.drawLine(
                             (int) (distMarginToFall + d),
-                            (int) (leafArray.length/2 + fall.getValueAtX(d-1.0)),
+                            (int) (height/2 + fall.getValueAtX(d-1.0)),
                             (int) (distMarginToFall + d),
-                            (int) (leafArray.length)
+                            (int) (height)
                     );
                 } // end for loop
             } // end linear
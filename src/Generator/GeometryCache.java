@@ -0,0 +1,267 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 pthom.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package Generator;
+
+// imports
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * A bounded least recently used cache of leaf geometry: the vein segments
+ * and the margin spans of every scanline. Parameter sweeps and the preview
+ * rebuild leaves whose parameters differ by less than a pixel, so keys are
+ * the parameters rounded to the pixels of the image (see Key), and such
+ * leaves share one entry. The entry is built from the key alone, never from
+ * the leaf that happened to ask first, so a leaf looks the same whatever
+ * else is in the cache and in whichever order the leaves are made.
+ *
+ * All methods are thread safe. The geometry of a missing entry is built
+ * outside of the lock, so a slow build never holds back other threads.
+ *
+ * @author pthom
+ */
+public class GeometryCache
+{
+    /**
+     * Leaf parameters rounded to the pixels of the image they are made for.
+     */
+    public static final class Key
+    {
+        private final String style;
+        private final int[] values;
+        private final int hash;
+
+        /**
+         * Constructor.
+         * @param style style of the primary veins
+         * @param values parameters rounded to whole pixels or to whatever
+         * step moves the leaf by less than a pixel. Not copied.
+         */
+        public Key(String style, int[] values)
+        {
+            this.style = style;
+            this.values = values;
+            this.hash = 31 * style.hashCode() + Arrays.hashCode(values);
+        } // end constructor
+
+        /**
+         * @return style the key was made with
+         */
+        public String getStyle()
+        {
+            return style;
+        } // end getStyle
+
+        /**
+         * @return rounded parameters, not a copy
+         */
+        public int[] getValues()
+        {
+            return values;
+        } // end getValues
+
+        @Override
+        public int hashCode()
+        {
+            return hash;
+        } // end hashCode
+
+        @Override
+        public boolean equals(Object other)
+        {
+            if (!(other instanceof Key))
+            {
+                return false;
+            } // end if not a key
+
+            Key key = (Key) other;
+            return hash == key.hash && style.equals(key.style)
+                    && Arrays.equals(values, key.values);
+        } // end equals
+    } // end Key
+
+    /**
+     * The geometry shared by every leaf with the same key. The veins and
+     * the margin are built with the entry, the spans the first time each is
+     * needed.
+     */
+    public static final class Entry
+    {
+        private final VeinGeometry veins;
+        private final LaminaRasterizer rasterizer;
+        private double[] spans;             // at pixel centers
+        private double[] antialiasedSpans;  // at sub-scanlines
+
+        /**
+         * Constructor.
+         * @param veins veins of the key
+         * @param rasterizer margin of the key
+         */
+        public Entry(VeinGeometry veins, LaminaRasterizer rasterizer)
+        {
+            this.veins = veins;
+            this.rasterizer = rasterizer;
+        } // end constructor
+
+        public VeinGeometry getVeins()
+        {
+            return veins;
+        } // end getVeins
+
+        public LaminaRasterizer getRasterizer()
+        {
+            return rasterizer;
+        } // end getRasterizer
+
+        /**
+         * Gets the spans of every scanline, computing them once.
+         * @param width width of the image
+         * @param height height of the image
+         * @param antialias whether the spans are for antialiasing
+         * @return spans as made by LaminaRasterizer.computeSpans
+         */
+        public synchronized double[] getSpans(int width, int height,
+                boolean antialias)
+        {
+            if (antialias)
+            {
+                if (antialiasedSpans == null)
+                {
+                    antialiasedSpans = rasterizer.computeSpans(width, height, true);
+                } // end if not computed
+                return antialiasedSpans;
+            } // end if antialias
+
+            if (spans == null)
+            {
+                spans = rasterizer.computeSpans(width, height, false);
+            } // end if not computed
+            return spans;
+        } // end getSpans
+    } // end Entry
+
+    private final int capacity;
+    private final LinkedHashMap<Key, Entry> entries;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Constructor.
+     * @param capacity most entries kept before the least recently used ones
+     * are dropped
+     */
+    public GeometryCache(final int capacity)
+    {
+        this.capacity = capacity;
+        this.entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true)
+        {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest)
+            {
+                return size() > capacity;
+            } // end removeEldestEntry
+        };
+    } // end constructor
+
+    /**
+     * Gets the entry of a key, building it if it is not cached.
+     * @param key rounded parameters of the leaf
+     * @param build builds the entry of a key on a miss, from nothing but
+     * the key
+     * @return cached or new entry
+     */
+    public Entry get(Key key, Function<Key, Entry> build)
+    {
+        Entry entry;
+        synchronized (entries)
+        {
+            entry = entries.get(key);
+        } // end synchronized
+        if (entry != null)
+        {
+            hits.incrementAndGet();
+            return entry;
+        } // end if hit
+
+        misses.incrementAndGet();
+        Entry built = build.apply(key);
+        synchronized (entries)
+        {
+            // another thread may have built the same key meanwhile
+            entry = entries.get(key);
+            if (entry == null)
+            {
+                entries.put(key, built);
+                entry = built;
+            } // end if still missing
+        } // end synchronized
+        return entry;
+    } // end get
+
+    public int getCapacity()
+    {
+        return capacity;
+    } // end getCapacity
+
+    public int size()
+    {
+        synchronized (entries)
+        {
+            return entries.size();
+        } // end synchronized
+    } // end size
+
+    public long getHitCount()
+    {
+        return hits.get();
+    } // end getHitCount
+
+    public long getMissCount()
+    {
+        return misses.get();
+    } // end getMissCount
+
+    /**
+     * Drops every entry and resets the counters.
+     */
+    public void clear()
+    {
+        synchronized (entries)
+        {
+            entries.clear();
+        } // end synchronized
+        hits.set(0);
+        misses.set(0);
+    } // end clear
+
+    @Override
+    public String toString()
+    {
+        return String.format("GeometryCache[%d/%d entries, %d hits, %d misses]",
+                size(), capacity, getHitCount(), getMissCount());
+    } // end toString
+} // end GeometryCache
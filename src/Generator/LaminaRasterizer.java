@@ -0,0 +1,704 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 pthom.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package Generator;
+
+/**
+ * Fills the lamina of a linear leaf straight into an int ARGB pixel array.
+ *
+ * Every scanline crosses the margin at most twice, once on the rise ellipse
+ * or the top/bottom flank and once on the fall ellipse, so each row is one
+ * background span, one lamina span and another background span. The spans
+ * come from the closed form of the ellipses instead of from drawing lines.
+ *
+ * A toothed margin (see MarginStyle) can cross a scanline many times, so it
+ * is filled column by column instead: every column of the leaf is one
+ * lamina span around the midrib, whose half height is the smooth margin
+ * plus the tooth at the arc length of that column.
+ *
+ * @author pthom
+ */
+public class LaminaRasterizer
+{
+    // number of sub-scanlines sampled per row when antialiasing
+    public static final int SUBSAMPLES = 4;
+
+    // margin geometry in pixels
+    private final double riseStart;     // left tip of the leaf
+    private final EllipseMath.Ellipse rise;
+    private final double fallStart;     // where the fall ellipse starts
+    private final EllipseMath.Ellipse fall;
+    private final double centerY;       // y of the midrib
+    private final double halfBreadth;   // k of both ellipses
+
+    // teeth along the margin, in pixels
+    private final MarginStyle margin;
+    private final double toothPeriod;
+    private final double toothDepth;
+
+    /**
+     * Constructor.
+     * @param riseStart x of the left tip of the leaf
+     * @param rise ellipse of the rise of the margin
+     * @param fallStart x where the margin starts to fall
+     * @param fall ellipse of the fall of the margin
+     * @param centerY y of the midrib
+     */
+    public LaminaRasterizer(double riseStart, EllipseMath.Ellipse rise,
+            double fallStart, EllipseMath.Ellipse fall, double centerY)
+    {
+        this(riseStart, rise, fallStart, fall, centerY, MarginStyle.SMOOTH,
+                1, 0);
+    } // end constructor
+
+    /**
+     * Constructor for a toothed margin.
+     * @param riseStart x of the left tip of the leaf
+     * @param rise ellipse of the rise of the margin
+     * @param fallStart x where the margin starts to fall
+     * @param fall ellipse of the fall of the margin
+     * @param centerY y of the midrib
+     * @param margin pattern of the margin
+     * @param toothPeriod length of one tooth along the margin, in pixels
+     * @param toothDepth how far a tooth sticks out, in pixels
+     */
+    public LaminaRasterizer(double riseStart, EllipseMath.Ellipse rise,
+            double fallStart, EllipseMath.Ellipse fall, double centerY,
+            MarginStyle margin, double toothPeriod, double toothDepth)
+    {
+        this.margin = margin;
+        this.toothPeriod = Math.max(toothPeriod, 1);
+        this.toothDepth = margin.isSmooth() ? 0 : toothDepth;
+        this.riseStart = riseStart;
+        this.rise = rise;
+        this.fallStart = fallStart;
+        this.fall = fall;
+        this.centerY = centerY;
+        this.halfBreadth = Math.min(rise.getK(), fall.getK());
+    } // end constructor
+
+    /**
+     * Finds where a horizontal line crosses the margin.
+     * @param y y value of the line
+     * @param span receives {left, right}; left &gt;= right when the line
+     * misses the leaf
+     */
+    public void computeSpan(double y, double[] span)
+    {
+        double dy = Math.abs(y - centerY);
+        if (dy >= halfBreadth)
+        {
+            span[0] = 0;
+            span[1] = 0;
+            return;
+        } // end if outside of the breadth
+
+        span[0] = riseStart + rise.getH() - rise.getXAtY(dy);
+        span[1] = fallStart + fall.getXAtY(dy);
+    } // end computeSpan
+
+    /**
+     * Finds how far a ray from inside of the leaf travels before it crosses
+     * the top half of the smooth margin, the same as
+     * Generator.Lamina.distanceToMargin.
+     * @param x x of the start of the ray, in pixels
+     * @param y y of the start of the ray, in pixels
+     * @param dx x direction of the ray, should be &gt;= 0
+     * @param dy y direction of the ray, negative is up
+     * @return distance along the ray in units of (dx, dy), infinite if the
+     * ray never crosses the margin
+     */
+    public double distanceToMargin(double x, double y, double dx, double dy)
+    {
+        return LeafGeometry.distanceToMargin(x, y, dx, dy, centerY,
+                rise, riseStart + rise.getH(), fall, fallStart);
+    } // end distanceToMargin
+
+    /**
+     * @return whether the margin has teeth and is filled column by column
+     */
+    public boolean isToothed()
+    {
+        return toothDepth > 0;
+    } // end isToothed
+
+    /**
+     * @return how far the teeth stick out past the smooth margin, in pixels
+     */
+    public double getToothDepth()
+    {
+        return toothDepth;
+    } // end getToothDepth
+
+    /**
+     * Gets the half height of the smooth margin.
+     * @param x x in pixels
+     * @return distance from the midrib to the margin, negative outside of
+     * the leaf
+     */
+    public double smoothHalfHeight(double x)
+    {
+        double riseEnd = riseStart + rise.getH();
+        if (x < riseStart || x > fallStart + fall.getH())
+        {
+            return -1;
+        } // end if outside of the leaf
+        if (x < riseEnd)
+        {
+            // keep rounding at the tip from going past the ellipse
+            return rise.getValueAtX(Math.max(x - riseEnd, -rise.getH()));
+        } // end if rise
+        if (x > fallStart)
+        {
+            return fall.getValueAtX(Math.min(x - fallStart, fall.getH()));
+        } // end if fall
+        return halfBreadth;
+    } // end smoothHalfHeight
+
+    /**
+     * Works out the half height of the toothed margin at columns of the
+     * image: one per column, at the pixel centers, or SUBSAMPLES per column
+     * when antialiasing. Walks the smooth margin from the base of the leaf
+     * one pixel at a time, adding up its arc length, and adds the tooth at
+     * that arc length. Samples between two pixel edges are interpolated, so
+     * the margin is only evaluated once per column at any resolution. The
+     * teeth fade out where the leaf gets narrower than a tooth, at the base
+     * and at the tip.
+     * @param width width of the image
+     * @param antialias whether to sample sub-columns
+     * @return half heights, 0 or less outside of the leaf
+     */
+    public double[] computeColumns(int width, boolean antialias)
+    {
+        // the toothed margin at every pixel edge, -1 outside of the leaf
+        double[] edges = new double[width + 1];
+        double teethPerPixel = 1 / toothPeriod;
+        double fadePerPixel = toothDepth > 0 ? 1 / toothDepth : 0;
+        double arc = 0;
+        double lastX = riseStart;
+        double lastH = 0;
+        for (int x = 0; x <= width; x++)
+        {
+            double h = smoothHalfHeight(x);
+            if (h < 0)
+            {
+                edges[x] = -1;
+                continue;
+            } // end if outside of the leaf
+
+            // the flat flanks, most of a linear leaf, need no square root
+            double dx = x - lastX;
+            double dh = h - lastH;
+            arc += dh == 0 ? dx : Math.sqrt(dx * dx + dh * dh);
+            lastX = x;
+            lastH = h;
+
+            double fade = Math.min(1, h * fadePerPixel);
+            edges[x] = h + toothDepth * fade
+                    * margin.toothAt(arc * teethPerPixel);
+        } // end for edges
+
+        int samples = antialias ? SUBSAMPLES : 1;
+        double[] columns = new double[samples * width];
+        for (int x = 0; x < width; x++)
+        {
+            double left = edges[x];
+            double step = edges[x + 1] - left;
+            for (int j = 0; j < samples; j++)
+            {
+                columns[x * samples + j] = left + step * (j + 0.5) / samples;
+            } // end for samples
+        } // end for columns
+        return columns;
+    } // end computeColumns
+
+    /**
+     * Works out whatever render needs for this margin: the row spans of
+     * computeSpans for a smooth margin, the columns of computeColumns for a
+     * toothed one.
+     * @param width width of the image
+     * @param height height of the image
+     * @param antialias whether to sample sub-scanlines or sub-columns
+     * @return spans or columns to pass to render
+     */
+    public double[] computeSpans(int width, int height, boolean antialias)
+    {
+        return isToothed()
+                ? computeColumns(width, antialias)
+                : computeSpans(height, antialias);
+    } // end computeSpans
+
+    /**
+     * Works out the spans of every row up front: one per row, at the pixel
+     * centers, or SUBSAMPLES per row when antialiasing. The table only
+     * depends on the margin and the height, so it can be cached and used
+     * for any number of renders.
+     * @param height height of the image
+     * @param antialias whether to sample sub-scanlines
+     * @return {left, right} of every sample, row after row
+     */
+    public double[] computeSpans(int height, boolean antialias)
+    {
+        int samples = antialias ? SUBSAMPLES : 1;
+        double[] spans = new double[2 * samples * height];
+        double[] span = new double[2];
+        for (int y = 0; y < height; y++)
+        {
+            for (int j = 0; j < samples; j++)
+            {
+                computeSpan(y + (j + 0.5) / samples, span);
+                int s = 2 * (y * samples + j);
+                spans[s] = span[0];
+                spans[s + 1] = span[1];
+            } // end for samples
+        } // end for rows
+        return spans;
+    } // end computeSpans
+
+    /**
+     * Paints the whole image: background outside of the margin and lamina
+     * inside of it.
+     * @param pixels ARGB pixels, row after row
+     * @param width width of the image
+     * @param height height of the image
+     * @param lamina ARGB color of the lamina
+     * @param background ARGB color of the background
+     * @param antialias whether edge pixels get blended by their coverage
+     */
+    public void render(int[] pixels, int width, int height,
+            int lamina, int background, boolean antialias)
+    {
+        render(pixels, width, height, lamina, background, antialias,
+                computeSpans(width, height, antialias));
+    } // end render
+
+    /**
+     * Paints the whole image from spans made by computeSpans(width,
+     * height, antialias).
+     * @param pixels ARGB pixels, row after row
+     * @param width width of the image
+     * @param height height of the image
+     * @param lamina ARGB color of the lamina
+     * @param background ARGB color of the background
+     * @param antialias whether edge pixels get blended by their coverage,
+     * must match the spans
+     * @param spans spans from computeSpans for the same height
+     */
+    public void render(int[] pixels, int width, int height,
+            int lamina, int background, boolean antialias, double[] spans)
+    {
+        render(pixels, width, height, lamina, background, antialias, spans,
+                null);
+    } // end render
+
+    /**
+     * Paints the whole image from spans made by computeSpans(width,
+     * height, antialias), taking the color of every lamina pixel from a
+     * texture.
+     * @param pixels ARGB pixels, row after row
+     * @param width width of the image
+     * @param height height of the image
+     * @param lamina ARGB color of the lamina, used when texture is null
+     * @param background ARGB color of the background
+     * @param antialias whether edge pixels get blended by their coverage,
+     * must match the spans
+     * @param spans spans from computeSpans for the same height
+     * @param texture texture of the lamina, null for a flat lamina
+     */
+    public void render(int[] pixels, int width, int height,
+            int lamina, int background, boolean antialias, double[] spans,
+            LaminaTexture texture)
+    {
+        if (isToothed())
+        {
+            renderColumns(pixels, width, height, lamina, background,
+                    antialias, spans, texture);
+            return;
+        } // end if toothed
+
+        for (int y = 0; y < height; y++)
+        {
+            int rowStart = y * width;
+
+            if (!antialias)
+            {
+                // pixel centers inside of [left, right) are lamina
+                int left = clamp((int) Math.ceil(spans[2 * y] - 0.5), width);
+                int right = clamp((int) Math.ceil(spans[2 * y + 1] - 0.5), width);
+                fillRow(pixels, rowStart, width, left, right, lamina,
+                        background, texture, y);
+                continue;
+            } // end if no antialiasing
+
+            // the sub-scanlines give the coverage of the edges
+            int first = 2 * SUBSAMPLES * y;
+            int last = first + 2 * SUBSAMPLES;
+            double minLeft = Double.MAX_VALUE, maxLeft = -Double.MAX_VALUE;
+            double minRight = Double.MAX_VALUE, maxRight = -Double.MAX_VALUE;
+            boolean anyInside = false;
+            boolean allInside = true;
+            for (int s = first; s < last; s += 2)
+            {
+                if (spans[s] < spans[s + 1])
+                {
+                    anyInside = true;
+                    minLeft = Math.min(minLeft, spans[s]);
+                    maxLeft = Math.max(maxLeft, spans[s]);
+                    minRight = Math.min(minRight, spans[s + 1]);
+                    maxRight = Math.max(maxRight, spans[s + 1]);
+                } // end if sub-scanline hits the leaf
+                else
+                {
+                    allInside = false;
+                } // end else sub-scanline misses
+            } // end for sub-scanlines
+
+            if (!anyInside)
+            {
+                fillRow(pixels, rowStart, width, 0, 0, lamina, background,
+                        texture, y);
+                continue;
+            } // end if row misses the leaf
+
+            // pixels between the edges are covered by every sub-scanline,
+            // unless one of the sub-scanlines missed the leaf entirely
+            int outerLeft = clamp((int) Math.floor(minLeft), width);
+            int outerRight = clamp((int) Math.ceil(maxRight), width);
+            int innerLeft = clamp((int) Math.ceil(maxLeft), width);
+            int innerRight = clamp((int) Math.floor(minRight), width);
+            if (!allInside || innerLeft >= innerRight)
+            {
+                innerLeft = outerRight;
+                innerRight = outerRight;
+            } // end if no solid middle
+
+            fillRow(pixels, rowStart, width, innerLeft, innerRight, lamina,
+                    background, texture, y);
+            blendEdge(pixels, rowStart, outerLeft, innerLeft, spans, first,
+                    last, lamina, background, texture, y);
+            blendEdge(pixels, rowStart, innerRight, outerRight, spans, first,
+                    last, lamina, background, texture, y);
+        } // end for rows
+    } // end render
+
+    /**
+     * Paints the whole image from the half heights of computeColumns. The
+     * solid part and the blended edges of every column are worked out
+     * first, then the solid runs are filled row by row like a smooth
+     * margin and the edges blended on top.
+     */
+    private void renderColumns(int[] pixels, int width, int height,
+            int lamina, int background, boolean antialias, double[] columns,
+            LaminaTexture texture)
+    {
+        // rows [outerTop, innerTop) and [innerBottom, outerBottom) of a
+        // column are blended, [innerTop, innerBottom) is solid lamina
+        int[] outerTops = new int[width];
+        int[] innerTops = new int[width];
+        int[] innerBottoms = new int[width];
+        int[] outerBottoms = new int[width];
+        int firstX = width;
+        int lastX = -1;
+        int topY = height;
+        int bottomY = 0;
+        for (int x = 0; x < width; x++)
+        {
+            int outerTop, innerTop, innerBottom, outerBottom;
+            if (!antialias)
+            {
+                // pixel centers inside of [top, bottom) are lamina
+                double h = columns[x];
+                innerTop = clamp((int) Math.ceil(centerY - h - 0.5), height);
+                innerBottom = clamp((int) Math.ceil(centerY + h - 0.5), height);
+                if (h <= 0 || innerTop >= innerBottom)
+                {
+                    innerTop = innerBottom = 0;
+                } // end if no lamina
+                outerTop = innerTop;
+                outerBottom = innerBottom;
+            } // end if no antialiasing
+            else
+            {
+                int first = SUBSAMPLES * x;
+                double minH = Double.MAX_VALUE;
+                double maxH = 0;
+                for (int j = first; j < first + SUBSAMPLES; j++)
+                {
+                    minH = Math.min(minH, Math.max(columns[j], 0));
+                    maxH = Math.max(maxH, columns[j]);
+                } // end for sub-columns
+
+                outerTop = clamp((int) Math.floor(centerY - maxH), height);
+                outerBottom = clamp((int) Math.ceil(centerY + maxH), height);
+                innerTop = clamp((int) Math.ceil(centerY - minH), height);
+                innerBottom = clamp((int) Math.floor(centerY + minH), height);
+                if (maxH <= 0)
+                {
+                    outerTop = outerBottom = 0;
+                } // end if column misses the leaf
+                if (innerTop >= innerBottom)
+                {
+                    innerTop = innerBottom = outerBottom;
+                } // end if no solid middle
+            } // end else antialiasing
+
+            outerTops[x] = outerTop;
+            innerTops[x] = innerTop;
+            innerBottoms[x] = innerBottom;
+            outerBottoms[x] = outerBottom;
+            if (outerTop < outerBottom)
+            {
+                firstX = Math.min(firstX, x);
+                lastX = x;
+                topY = Math.min(topY, outerTop);
+                bottomY = Math.max(bottomY, outerBottom);
+            } // end if column has lamina
+        } // end for columns
+
+        if (firstX > lastX)
+        {
+            java.util.Arrays.fill(pixels, 0, width * height, background);
+            return;
+        } // end if no leaf
+
+        // every row is background with solid runs in it. The solid rows of
+        // two neighboring columns differ only where the margin moves, so
+        // the x values where a row toggles between background and lamina
+        // are found per pair of columns, never per pixel
+        // first count the toggles of every row, then store them row after
+        // row, rowStarts[y] is where the toggles of row y begin
+        int[] rowStarts = new int[height + 1];
+        for (int x = firstX; x <= lastX + 1; x++)
+        {
+            findToggles(innerTops, innerBottoms, x, lastX, rowStarts, null, null);
+        } // end for column pairs
+        for (int y = 0; y < height; y++)
+        {
+            rowStarts[y + 1] += rowStarts[y];
+        } // end for rows
+        int[] toggles = new int[rowStarts[height]];
+        int[] next = java.util.Arrays.copyOf(rowStarts, height);
+        for (int x = firstX; x <= lastX + 1; x++)
+        {
+            findToggles(innerTops, innerBottoms, x, lastX, null, toggles, next);
+        } // end for column pairs
+
+        for (int y = 0; y < height; y++)
+        {
+            int rowStart = y * width;
+            int x = 0;
+            for (int t = rowStarts[y]; t + 1 < rowStarts[y + 1]; t += 2)
+            {
+                int left = toggles[t];
+                int right = toggles[t + 1];
+                java.util.Arrays.fill(pixels, rowStart + x, rowStart + left, background);
+                if (texture == null)
+                {
+                    java.util.Arrays.fill(pixels, rowStart + left, rowStart + right, lamina);
+                } // end if flat
+                else
+                {
+                    texture.fill(pixels, rowStart, left, right, y);
+                } // end else textured
+                x = right;
+            } // end for runs
+            java.util.Arrays.fill(pixels, rowStart + x, rowStart + width, background);
+        } // end for rows
+
+        if (!antialias)
+        {
+            return;
+        } // end if no edges
+
+        // the edges are a thin band along the margin, blended column by column
+        for (int x = firstX; x <= lastX; x++)
+        {
+            int first = SUBSAMPLES * x;
+            for (int y = outerTops[x]; y < innerTops[x]; y++)
+            {
+                pixels[y * width + x] = blend(background,
+                        texture == null ? lamina : texture.colorAt(x, y),
+                        columnCoverage(columns, first, y));
+            } // end for top edge
+            for (int y = innerBottoms[x]; y < outerBottoms[x]; y++)
+            {
+                pixels[y * width + x] = blend(background,
+                        texture == null ? lamina : texture.colorAt(x, y),
+                        columnCoverage(columns, first, y));
+            } // end for bottom edge
+        } // end for columns
+    } // end renderColumns
+
+    /**
+     * Finds every row whose pixel in column x - 1 is solid lamina and in
+     * column x is not, or the other way around. Columns outside of
+     * [0, lastX] count as background. Either counts the rows into
+     * rowCounts[y + 1], or stores x at next[y] of toggles.
+     */
+    private static void findToggles(int[] tops, int[] bottoms, int x,
+            int lastX, int[] rowCounts, int[] toggles, int[] next)
+    {
+        int t0 = 0, b0 = 0, t1 = 0, b1 = 0;
+        if (x > 0)
+        {
+            t0 = tops[x - 1];
+            b0 = bottoms[x - 1];
+        } // end if column before
+        if (x <= lastX)
+        {
+            t1 = tops[x];
+            b1 = bottoms[x];
+        } // end if column
+
+        if (t0 >= b0 || t1 >= b1 || b0 <= t1 || b1 <= t0)
+        {
+            // one of them is empty or they do not overlap: every row of
+            // either toggles
+            toggleRows(t0, b0, x, rowCounts, toggles, next);
+            toggleRows(t1, b1, x, rowCounts, toggles, next);
+            return;
+        } // end if no overlap
+
+        // overlapping: only the rows between the two tops and between the
+        // two bottoms toggle
+        toggleRows(Math.min(t0, t1), Math.max(t0, t1), x, rowCounts, toggles, next);
+        toggleRows(Math.min(b0, b1), Math.max(b0, b1), x, rowCounts, toggles, next);
+    } // end findToggles
+
+    private static void toggleRows(int y0, int y1, int x, int[] rowCounts,
+            int[] toggles, int[] next)
+    {
+        for (int y = y0; y < y1; y++)
+        {
+            if (toggles == null)
+            {
+                rowCounts[y + 1]++;
+            } // end if counting
+            else
+            {
+                toggles[next[y]++] = x;
+            } // end else storing
+        } // end for rows
+    } // end toggleRows
+
+    /**
+     * Gets how much of the pixel in row y the sub-columns from first on
+     * cover.
+     */
+    private double columnCoverage(double[] columns, int first, int y)
+    {
+        double coverage = 0;
+        for (int j = first; j < first + SUBSAMPLES; j++)
+        {
+            double covered = Math.min(y + 1, centerY + columns[j])
+                    - Math.max(y, centerY - columns[j]);
+            if (covered > 0)
+            {
+                coverage += covered;
+            } // end if covered
+        } // end for sub-columns
+        return coverage / SUBSAMPLES;
+    } // end columnCoverage
+
+    /**
+     * Fills one row with background, then lamina from left to right.
+     */
+    private static void fillRow(int[] pixels, int rowStart, int width,
+            int left, int right, int lamina, int background,
+            LaminaTexture texture, int y)
+    {
+        if (left >= right)
+        {
+            java.util.Arrays.fill(pixels, rowStart, rowStart + width, background);
+            return;
+        } // end if no lamina
+
+        java.util.Arrays.fill(pixels, rowStart, rowStart + left, background);
+        if (texture == null)
+        {
+            java.util.Arrays.fill(pixels, rowStart + left, rowStart + right, lamina);
+        } // end if flat
+        else
+        {
+            texture.fill(pixels, rowStart, left, right, y);
+        } // end else textured
+        java.util.Arrays.fill(pixels, rowStart + right, rowStart + width, background);
+    } // end fillRow
+
+    /**
+     * Blends the pixels from x0 to x1 by how much of them the sub-scanline
+     * spans from first to last cover.
+     */
+    private static void blendEdge(int[] pixels, int rowStart, int x0, int x1,
+            double[] spans, int first, int last, int lamina, int background,
+            LaminaTexture texture, int y)
+    {
+        for (int x = x0; x < x1; x++)
+        {
+            double coverage = 0;
+            for (int j = first; j < last; j += 2)
+            {
+                double covered = Math.min(x + 1, spans[j + 1])
+                        - Math.max(x, spans[j]);
+                if (covered > 0)
+                {
+                    coverage += covered;
+                } // end if covered
+            } // end for sub-scanlines
+
+            pixels[rowStart + x] = blend(background,
+                    texture == null ? lamina : texture.colorAt(x, y),
+                    coverage / SUBSAMPLES);
+        } // end for edge pixels
+    } // end blendEdge
+
+    /**
+     * Mixes two opaque colors.
+     * @param from color at a coverage of 0
+     * @param to color at a coverage of 1
+     * @param coverage amount of to, between 0 and 1
+     * @return mixed ARGB color
+     */
+    static int blend(int from, int to, double coverage)
+    {
+        int a = (int) Math.round(coverage * 256);
+        if (a <= 0)
+        {
+            return from;
+        } // end if no coverage
+        if (a >= 256)
+        {
+            return to;
+        } // end if full coverage
+
+        int rb = (((from & 0xFF00FF) * (256 - a) + (to & 0xFF00FF) * a) >>> 8) & 0xFF00FF;
+        int g = (((from & 0x00FF00) * (256 - a) + (to & 0x00FF00) * a) >>> 8) & 0x00FF00;
+        int alpha = (((from >>> 24) * (256 - a) + (to >>> 24) * a) >>> 8) << 24;
+        return alpha | rb | g;
+    } // end blend
+
+    private static int clamp(int x, int width)
+    {
+        return x < 0 ? 0 : (x > width ? width : x);
+    } // end clamp
+} // end LaminaRasterizer
@@ -0,0 +1,156 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 pthom.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package Generator;
+
+/**
+ * The texture of the lamina of one leaf: a window into one of the shared
+ * NoiseTextures at a random offset, a random tint of the lamina color and
+ * shading that gets darker from the midrib out to the margin.
+ *
+ * Nothing is evaluated per pixel beyond two table lookups. Every color a
+ * texel can turn into is worked out up front, for each of a few shading
+ * levels, so a pixel is lut[level of its row + texel under it].
+ *
+ * @author pthom
+ */
+public final class LaminaTexture
+{
+    // shading steps from the midrib to the margin
+    private static final int LEVELS = 16;
+
+    // strengths at a texture strength of 1
+    private static final double MOTTLE = 0.22;      // +- brightness of the noise
+    private static final double BRIGHTNESS = 0.12;  // +- brightness per leaf
+    private static final double HUE = 0.10;         // +- per channel per leaf
+    private static final double SHADE = 0.18;       // darkening at the margin
+
+    private final byte[] texels;
+    private final int shift;
+    private final int mask;
+    private final int offsetX;
+    private final int offsetY;
+    private final int[] lut;            // LEVELS rows of 256 colors
+    private final int[] rowLevel;       // first lut entry of every row
+
+    /**
+     * Picks the texture of one leaf.
+     * @param textures textures shared by the batch
+     * @param seed seed of the leaf, picks texture, offset and tint
+     * @param lamina ARGB color of the lamina before texturing
+     * @param strength how strong every effect is, 0 for flat, 1 for the
+     * defaults
+     * @param height height of the image
+     * @param centerY y of the midrib
+     * @param halfBreadth distance from the midrib to the margin
+     */
+    public LaminaTexture(NoiseTextures textures, long seed, int lamina,
+            double strength, int height, double centerY, double halfBreadth)
+    {
+        // every choice comes from its own bits of one mixed seed
+        long bits = SplitMix64.mix64(seed);
+        long more = SplitMix64.mix64(bits);
+        this.texels = textures.getTexels(
+                (int) Long.remainderUnsigned(bits, textures.getCount()));
+        this.shift = textures.getShift();
+        this.mask = textures.getSize() - 1;
+        this.offsetX = (int) (bits >>> 32) & mask;
+        this.offsetY = (int) (bits >>> 16) & mask;
+
+        double brightness = 1 + strength * BRIGHTNESS * signed(more, 0);
+        double red = brightness * (1 + strength * HUE * signed(more, 16));
+        double green = brightness * (1 + strength * HUE * signed(more, 32));
+        double blue = brightness * (1 + strength * HUE * signed(more, 48));
+
+        this.lut = new int[LEVELS * 256];
+        int alpha = lamina & 0xFF000000;
+        int r = (lamina >> 16) & 0xFF;
+        int g = (lamina >> 8) & 0xFF;
+        int b = lamina & 0xFF;
+        for (int level = 0; level < LEVELS; level++)
+        {
+            double shade = 1 - strength * SHADE * level / (LEVELS - 1);
+            for (int n = 0; n < 256; n++)
+            {
+                double f = shade * (1 + strength * MOTTLE * (n - 127.5) / 127.5);
+                lut[level * 256 + n] = alpha
+                        | channel(r * red * f) << 16
+                        | channel(g * green * f) << 8
+                        | channel(b * blue * f);
+            } // end for texels
+        } // end for levels
+
+        this.rowLevel = new int[height];
+        for (int y = 0; y < height; y++)
+        {
+            double d = halfBreadth > 0
+                    ? Math.min(1, Math.abs(y + 0.5 - centerY) / halfBreadth)
+                    : 1;
+            rowLevel[y] = (int) Math.round(d * (LEVELS - 1)) * 256;
+        } // end for rows
+    } // end constructor
+
+    /**
+     * Paints lamina pixels of one row.
+     * @param pixels ARGB pixels
+     * @param rowStart index of the first pixel of the row
+     * @param x0 first x to paint
+     * @param x1 x after the last one to paint
+     * @param y row
+     */
+    public void fill(int[] pixels, int rowStart, int x0, int x1, int y)
+    {
+        int level = rowLevel[y];
+        int row = ((y + offsetY) & mask) << shift;
+        for (int x = x0; x < x1; x++)
+        {
+            pixels[rowStart + x] = lut[level
+                    + (texels[row | ((x + offsetX) & mask)] & 0xFF)];
+        } // end for pixels
+    } // end fill
+
+    /**
+     * @param x x of the pixel
+     * @param y y of the pixel
+     * @return ARGB color of the lamina at the pixel
+     */
+    public int colorAt(int x, int y)
+    {
+        return lut[rowLevel[y] + (texels[(((y + offsetY) & mask) << shift)
+                | ((x + offsetX) & mask)] & 0xFF)];
+    } // end colorAt
+
+    /**
+     * @return 16 bits of value from the given bit on, as -1 to 1
+     */
+    private static double signed(long bits, int from)
+    {
+        return ((bits >>> from) & 0xFFFF) / 32767.5 - 1;
+    } // end signed
+
+    private static int channel(double value)
+    {
+        long c = Math.round(value);
+        return c < 0 ? 0 : (c > 255 ? 255 : (int) c);
+    } // end channel
+} // end LaminaTexture
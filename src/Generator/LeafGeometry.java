@@ -0,0 +1,404 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 pthom.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package Generator;
+
+// imports
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.Line2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+
+/**
+ * The shape of one leaf without a pixel size: midrib, primary veins and the
+ * margin, all in normalized units where (0, 0) is the top left and (1, 1) the
+ * bottom right of the image. Nothing is rounded to pixels, so one geometry
+ * can be rasterized at any number of sizes, each drawn directly at its own
+ * resolution instead of scaled down from a large one.
+ *
+ * Like the Generator, lengths along the midrib are proportions of the width
+ * of the image and the breadth is a proportion of its height, so the leaf
+ * keeps its look when drawn with the aspect ratio it was made for.
+ *
+ * @author pthom
+ */
+public class LeafGeometry
+{
+    // width / height of the image the leaf was made for
+    private final double aspect;
+
+    // midrib, x in units of the width, on the middle of the height
+    private final double midribStart;
+    private final double midribEnd;
+
+    // margin, x in units of the width, y in units of the height
+    private final double halfBreadth;
+    private final double riseEnd;       // where the rise ellipse ends
+    private final double fallStart;     // where the fall ellipse starts
+    private final double tip;           // where the fall ellipse ends
+    private final MarginStyle margin;
+
+    // x0, y0, x1, y1 of every primary vein segment, normalized
+    private final double[] veins;
+
+    private LeafGeometry(double aspect, double midribStart, double midribEnd,
+            double halfBreadth, double riseEnd, double fallStart, double tip,
+            MarginStyle margin, double[] veins)
+    {
+        this.aspect = aspect;
+        this.midribStart = midribStart;
+        this.midribEnd = midribEnd;
+        this.halfBreadth = halfBreadth;
+        this.riseEnd = riseEnd;
+        this.fallStart = fallStart;
+        this.tip = tip;
+        this.margin = margin;
+        this.veins = veins;
+    } // end constructor
+
+    /**
+     * Works out the geometry of a leaf from the same parameters the
+     * Generator takes.
+     * @param aspect width / height of the image the leaf is made for
+     * @param midribLengthProportion length of the midrib in proportion to
+     * the width
+     * @param midribOffsetProportion start of the midrib in proportion to the
+     * width
+     * @param primaryVeinsStyle style of the primary veins, like "pinnate"
+     * @param primaryVeinParameters {number of veins on each side, angle in
+     * degrees, length of vein 1, length of vein 2, ...}
+     * @param laminaArgs {breadth, end of rise, start of fall}
+     * @return geometry of the leaf
+     */
+    public static LeafGeometry create(
+            double aspect,
+            double midribLengthProportion,
+            double midribOffsetProportion,
+            String primaryVeinsStyle,
+            double[] primaryVeinParameters,
+            double[] laminaArgs)
+    {
+        return create(aspect, midribLengthProportion, midribOffsetProportion,
+                primaryVeinsStyle, primaryVeinParameters, laminaArgs,
+                MarginStyle.SMOOTH);
+    } // end create
+
+    /**
+     * Works out the geometry of a leaf with a toothed margin.
+     * @param aspect width / height of the image the leaf is made for
+     * @param midribLengthProportion length of the midrib in proportion to
+     * the width
+     * @param midribOffsetProportion start of the midrib in proportion to the
+     * width
+     * @param primaryVeinsStyle style of the primary veins, like "pinnate"
+     * @param primaryVeinParameters {number of veins on each side, angle in
+     * degrees, length of vein 1, length of vein 2, ...}
+     * @param laminaArgs {breadth, end of rise, start of fall}
+     * @param margin pattern of the margin
+     * @return geometry of the leaf
+     */
+    public static LeafGeometry create(
+            double aspect,
+            double midribLengthProportion,
+            double midribOffsetProportion,
+            String primaryVeinsStyle,
+            double[] primaryVeinParameters,
+            double[] laminaArgs,
+            MarginStyle margin)
+    {
+        double start = midribOffsetProportion;
+        double length = midribLengthProportion;
+        double halfBreadth = laminaArgs[0] / 2.0;
+        double riseEnd = start + laminaArgs[1] * length;
+        double fallStart = start + laminaArgs[2] * length;
+        double tip = fallStart + (1 - laminaArgs[2]) * length;
+
+        double[] veins = new double[0];
+        if ("pinnate".equals(primaryVeinsStyle))
+        {
+            veins = pinnate(aspect, primaryVeinParameters, start, length,
+                    halfBreadth, riseEnd, fallStart, tip);
+        } // end if pinnate
+
+        return new LeafGeometry(aspect, start, Math.min(start + length, tip),
+                halfBreadth, riseEnd, fallStart, tip, margin, veins);
+    } // end create
+
+    /**
+     * Works out pinnate veins the way VeinGeometry.pinnate does, in units of
+     * the height on both axes so the angle of the veins is kept.
+     * @return normalized segments of the veins
+     */
+    private static double[] pinnate(double aspect, double[] parameters,
+            double start, double length, double halfBreadth,
+            double riseEnd, double fallStart, double tip)
+    {
+        int numBranchingVeins = (int) parameters[0];
+        double angleOfVeins = Math.toRadians(parameters[1]);
+        double xUnit = Math.cos(angleOfVeins);
+        double yUnit = Math.sin(angleOfVeins);
+
+        EllipseMath.Ellipse rise = new EllipseMath.Ellipse(
+                (riseEnd - start) * aspect, halfBreadth);
+        EllipseMath.Ellipse fall = new EllipseMath.Ellipse(
+                (tip - fallStart) * aspect, halfBreadth);
+
+        double[] segments = new double[numBranchingVeins * 8];
+        for (int i = 0; i < numBranchingVeins; i++)
+        {
+            double x = (start + length / (numBranchingVeins + 1) * (i + 1)) * aspect;
+            double branchLength = parameters[i + 2] * length * aspect;
+            branchLength = Math.min(branchLength, distanceToMargin(
+                    x, 0.5, xUnit, -yUnit, 0.5,
+                    rise, riseEnd * aspect, fall, fallStart * aspect));
+
+            double xEnd = (x + xUnit * branchLength) / aspect;
+            double yDiff = yUnit * branchLength;
+
+            // top, then bottom
+            int c = i * 8;
+            segments[c] = x / aspect;
+            segments[c + 1] = 0.5;
+            segments[c + 2] = xEnd;
+            segments[c + 3] = 0.5 - yDiff;
+            segments[c + 4] = x / aspect;
+            segments[c + 5] = 0.5;
+            segments[c + 6] = xEnd;
+            segments[c + 7] = 0.5 + yDiff;
+        } // end for veins
+
+        return segments;
+    } // end pinnate
+
+    /**
+     * Finds how far a ray from inside of a linear leaf travels before it
+     * crosses the top half of the margin: the rise ellipse, the flat top or
+     * the fall ellipse. Shared by Generator.Lamina, which works in pixels.
+     * @param x x of the start of the ray
+     * @param y y of the start of the ray
+     * @param dx x direction of the ray, should be &gt;= 0
+     * @param dy y direction of the ray, negative is up
+     * @param centerY y of the midrib
+     * @param rise ellipse of the rise, centered on riseEnd
+     * @param riseEnd x where the rise ends
+     * @param fall ellipse of the fall, centered on fallStart
+     * @param fallStart x where the fall starts
+     * @return distance along the ray in units of (dx, dy), infinite if the
+     * ray never crosses the margin
+     */
+    static double distanceToMargin(double x, double y, double dx, double dy,
+            double centerY, EllipseMath.Ellipse rise, double riseEnd,
+            EllipseMath.Ellipse fall, double fallStart)
+    {
+        // work with y going up from the midrib
+        double ly = centerY - y;
+        double ldy = -dy;
+        double halfBreadth = rise.getK();
+        double best = Double.POSITIVE_INFINITY;
+
+        // the flat top between the rise and the fall
+        if (ldy > 0)
+        {
+            double t = (halfBreadth - ly) / ldy;
+            double hitX = x + t * dx;
+            if (t >= 0 && hitX >= riseEnd && hitX <= fallStart)
+            {
+                best = t;
+            } // end if hits the flat part
+        } // end if going up
+
+        // the left half of the rise ellipse
+        double t = rise.exitRay(x - riseEnd, ly, dx, ldy);
+        if (t < best && x + t * dx <= riseEnd)
+        {
+            best = t;
+        } // end if hits the rise
+
+        // the right half of the fall ellipse
+        t = fall.exitRay(x - fallStart, ly, dx, ldy);
+        if (t < best && x + t * dx >= fallStart)
+        {
+            best = t;
+        } // end if hits the fall
+
+        return best;
+    } // end distanceToMargin
+
+    /**
+     * @return width / height of the image the leaf was made for
+     */
+    public double getAspect()
+    {
+        return aspect;
+    } // end getAspect
+
+    /**
+     * Creates a rasterizer for the margin at one image size.
+     * @param width width of the image in pixels
+     * @param height height of the image in pixels
+     * @return rasterizer of the lamina
+     */
+    public LaminaRasterizer getRasterizer(int width, int height)
+    {
+        return new LaminaRasterizer(
+                midribStart * width,
+                new EllipseMath.Ellipse((riseEnd - midribStart) * width,
+                        halfBreadth * height),
+                fallStart * width,
+                new EllipseMath.Ellipse((tip - fallStart) * width,
+                        halfBreadth * height),
+                height / 2,
+                margin,
+                margin.period * (tip - midribStart) * width,
+                margin.depth * 2 * halfBreadth * height);
+    } // end getRasterizer
+
+    /**
+     * Scales the primary veins to one image size.
+     * @param width width of the image in pixels
+     * @param height height of the image in pixels
+     * @return veins in pixels
+     */
+    public VeinGeometry getVeins(int width, int height)
+    {
+        float[] coordinates = new float[veins.length];
+        for (int c = 0; c < veins.length; c += 2)
+        {
+            coordinates[c] = (float) (veins[c] * width);
+            coordinates[c + 1] = (float) (veins[c + 1] * height);
+        } // end for points
+        return new VeinGeometry(coordinates);
+    } // end getVeins
+
+    /**
+     * Casts the midrib and the veins onto a new mask of the given size.
+     * @param width width of the mask
+     * @param height height of the mask
+     * @return mask of the leaf
+     */
+    public LeafMask createMask(int width, int height)
+    {
+        LeafMask mask = new LeafMask(width, height);
+        mask.fillRow(height / 2,
+                (int) (midribStart * width) + 1,
+                (int) (midribEnd * width));
+        return getVeins(width, height).cast(mask);
+    } // end createMask
+
+    /**
+     * Renders the leaf at several sizes, each one drawn directly at its own
+     * resolution.
+     * @param sizes sizes of the images
+     * @param antialias whether edges are antialiased
+     * @return one image per size, in the same order
+     */
+    public BufferedImage[] render(Dimension[] sizes, boolean antialias)
+    {
+        return render(sizes, RenderContext.fromDefaults(antialias));
+    } // end render
+
+    /**
+     * Renders the leaf at several sizes.
+     * @param sizes sizes of the images
+     * @param context colors and antialiasing to draw with
+     * @return one image per size, in the same order
+     */
+    public BufferedImage[] render(Dimension[] sizes, RenderContext context)
+    {
+        BufferedImage[] images = new BufferedImage[sizes.length];
+        for (int i = 0; i < sizes.length; i++)
+        {
+            images[i] = render(sizes[i].width, sizes[i].height, context);
+        } // end for sizes
+        return images;
+    } // end render
+
+    /**
+     * Renders the leaf at one size.
+     * @param width width of the image
+     * @param height height of the image
+     * @param antialias whether edges are antialiased
+     * @return image of the leaf
+     */
+    public BufferedImage render(int width, int height, boolean antialias)
+    {
+        return render(width, height, RenderContext.fromDefaults(antialias));
+    } // end render
+
+    /**
+     * Renders the leaf at one size.
+     * @param width width of the image
+     * @param height height of the image
+     * @param context colors and antialiasing to draw with
+     * @return image of the leaf
+     */
+    public BufferedImage render(int width, int height, RenderContext context)
+    {
+        Palette palette = context.palette;
+        boolean antialias = context.antialias;
+        BufferedImage image = new BufferedImage(width, height,
+                BufferedImage.TYPE_INT_ARGB);
+        int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        getRasterizer(width, height).render(
+                pixels,
+                width,
+                height,
+                palette.lamina.getRGB(),
+                palette.background.getRGB(),
+                antialias);
+
+        Graphics2D g2 = image.createGraphics();
+        try
+        {
+            if (antialias)
+            {
+                g2.setRenderingHint(
+                        RenderingHints.KEY_ANTIALIASING,
+                        RenderingHints.VALUE_ANTIALIAS_ON);
+            } // end if antialias
+
+            // keep the end of the midrib inside of the tip
+            double y = height / 2;
+            g2.setColor(palette.midrib);
+            g2.draw(new Line2D.Double(midribStart * width, y,
+                    Math.min(midribEnd * width, tip * width - 1), y));
+
+            g2.setColor(palette.veins);
+            Line2D.Double line = new Line2D.Double();
+            for (int c = 0; c < veins.length; c += 4)
+            {
+                line.setLine(veins[c + 2] * width, veins[c + 3] * height,
+                        veins[c] * width, veins[c + 1] * height);
+                g2.draw(line);
+            } // end for segments
+        } // end try
+        finally
+        {
+            g2.dispose();
+        } // end finally
+
+        return image;
+    } // end render
+} // end LeafGeometry
@@ -0,0 +1,314 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 pthom.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package Generator;
+
+// imports
+import java.util.Arrays;
+
+/**
+ * A bit-packed replacement for the old Boolean[][] leaf array. Every row is
+ * stored as a run of 64-bit words, so a 1280x720 leaf takes about 115 KB
+ * instead of close to a million object references.
+ *
+ * @author pthom
+ */
+public class LeafMask
+{
+    private final int width;
+    private final int height;
+    private final int wordsPerRow;
+    private final long[] words;
+
+    /**
+     * Creates an empty (all false) mask.
+     * @param width width of the mask
+     * @param height height of the mask
+     */
+    public LeafMask(int width, int height)
+    {
+        this.width = width;
+        this.height = height;
+        this.wordsPerRow = (width + 63) >>> 6;
+        this.words = new long[wordsPerRow * height];
+    } // end constructor
+
+    public int getWidth()
+    {
+        return width;
+    } // end getWidth
+
+    public int getHeight()
+    {
+        return height;
+    } // end getHeight
+
+    /**
+     * Gets the number of words used for each row.
+     * @return words per row
+     */
+    public int getWordsPerRow()
+    {
+        return wordsPerRow;
+    } // end getWordsPerRow
+
+    /**
+     * Gets the backing words, row after row. Bit x of a row lives in bit
+     * (x &amp; 63) of word (x &gt;&gt; 6).
+     * @return backing words, not a copy
+     */
+    public long[] getWords()
+    {
+        return words;
+    } // end getWords
+
+    /**
+     * Tests whether a point is in bounds of the mask.
+     * @param x x value
+     * @param y y value
+     * @return true if inside
+     */
+    public boolean inBounds(int x, int y)
+    {
+        return x >= 0 && x < width && y >= 0 && y < height;
+    } // end inBounds
+
+    /**
+     * Gets one cell.
+     * @param x x value
+     * @param y y value
+     * @return value of the cell
+     */
+    public boolean get(int x, int y)
+    {
+        checkBounds(x, y);
+        return (words[y * wordsPerRow + (x >>> 6)] & (1L << x)) != 0;
+    } // end get
+
+    /**
+     * Sets one cell to true.
+     * @param x x value
+     * @param y y value
+     */
+    public void set(int x, int y)
+    {
+        checkBounds(x, y);
+        words[y * wordsPerRow + (x >>> 6)] |= 1L << x;
+    } // end set
+
+    /**
+     * Sets one cell to true if it is inside the mask, ignores it otherwise.
+     * @param x x value
+     * @param y y value
+     */
+    public void setIfInBounds(int x, int y)
+    {
+        if (inBounds(x, y))
+        {
+            words[y * wordsPerRow + (x >>> 6)] |= 1L << x;
+        } // end if in bounds
+    } // end setIfInBounds
+
+    /**
+     * Sets one cell to false.
+     * @param x x value
+     * @param y y value
+     */
+    public void clear(int x, int y)
+    {
+        checkBounds(x, y);
+        words[y * wordsPerRow + (x >>> 6)] &= ~(1L << x);
+    } // end clear
+
+    /**
+     * Sets every cell to false, so the mask can be cast again.
+     */
+    public void clear()
+    {
+        Arrays.fill(words, 0L);
+    } // end clear
+
+    /**
+     * Sets a run of cells in one row to true. The run is clipped to the
+     * mask, so any values can be given.
+     * @param y row
+     * @param fromX first x value, inclusive
+     * @param toX last x value, exclusive
+     */
+    public void fillRow(int y, int fromX, int toX)
+    {
+        if (y < 0 || y >= height)
+        {
+            return;
+        } // end if row out of bounds
+
+        fromX = Math.max(fromX, 0);
+        toX = Math.min(toX, width);
+        if (fromX >= toX)
+        {
+            return;
+        } // end if nothing to fill
+
+        int rowStart = y * wordsPerRow;
+        int firstWord = fromX >>> 6;
+        int lastWord = (toX - 1) >>> 6;
+        long firstMask = -1L << fromX;
+        long lastMask = -1L >>> -toX;
+
+        if (firstWord == lastWord)
+        {
+            words[rowStart + firstWord] |= firstMask & lastMask;
+            return;
+        } // end if one word
+
+        words[rowStart + firstWord] |= firstMask;
+        for (int i = firstWord + 1; i < lastWord; i++)
+        {
+            words[rowStart + i] = -1L;
+        } // end for whole words
+        words[rowStart + lastWord] |= lastMask;
+    } // end fillRow
+
+    /**
+     * Tests whether any cell of a row is true.
+     * @param y row
+     * @return true if at least one cell is set
+     */
+    public boolean testRow(int y)
+    {
+        int rowStart = y * wordsPerRow;
+        for (int i = rowStart; i < rowStart + wordsPerRow; i++)
+        {
+            if (words[i] != 0)
+            {
+                return true;
+            } // end if set
+        } // end for words
+        return false;
+    } // end testRow
+
+    /**
+     * Counts the true cells of one row.
+     * @param y row
+     * @return number of set cells
+     */
+    public int countRow(int y)
+    {
+        int count = 0;
+        int rowStart = y * wordsPerRow;
+        for (int i = rowStart; i < rowStart + wordsPerRow; i++)
+        {
+            count += Long.bitCount(words[i]);
+        } // end for words
+        return count;
+    } // end countRow
+
+    /**
+     * Sets every cell that is true in the other mask. Both masks need the
+     * same dimensions.
+     * @param other mask to merge in
+     */
+    public void union(LeafMask other)
+    {
+        if (other.width != width || other.height != height)
+        {
+            throw new IllegalArgumentException("Mask sizes differ: "
+                    + other.width + "x" + other.height + " vs "
+                    + width + "x" + height);
+        } // end if sizes differ
+
+        for (int i = 0; i < words.length; i++)
+        {
+            words[i] |= other.words[i];
+        } // end for words
+    } // end union
+
+    /**
+     * Merges one row of another mask into the same row of this one.
+     * @param y row
+     * @param other mask of the same dimensions
+     */
+    public void unionRow(int y, LeafMask other)
+    {
+        if (other.width != width || other.height != height)
+        {
+            throw new IllegalArgumentException("Mask sizes differ");
+        } // end if sizes differ
+
+        int rowStart = y * wordsPerRow;
+        for (int i = rowStart; i < rowStart + wordsPerRow; i++)
+        {
+            words[i] |= other.words[i];
+        } // end for words
+    } // end unionRow
+
+    /**
+     * Adapter for code that still wants the old boxed array.
+     * @return a new Boolean[height][width] with the values of this mask
+     */
+    public Boolean[][] toBooleanArray()
+    {
+        Boolean[][] output = new Boolean[height][width];
+        for (int h = 0; h < height; h++)
+        {
+            int rowStart = h * wordsPerRow;
+            for (int w = 0; w < width; w++)
+            {
+                output[h][w] = (words[rowStart + (w >>> 6)] & (1L << w)) != 0;
+            } // end for w values
+        } // end for h values
+        return output;
+    } // end toBooleanArray
+
+    /**
+     * Adapter for code that still has a boxed array. Null cells count as
+     * false.
+     * @param array array of [height][width]
+     * @return new mask with the same values
+     */
+    public static LeafMask fromBooleanArray(Boolean[][] array)
+    {
+        LeafMask mask = new LeafMask(array.length == 0 ? 0 : array[0].length,
+                array.length);
+        for (int h = 0; h < mask.height; h++)
+        {
+            for (int w = 0; w < mask.width; w++)
+            {
+                if (Boolean.TRUE.equals(array[h][w]))
+                {
+                    mask.set(w, h);
+                } // end if set
+            } // end for w values
+        } // end for h values
+        return mask;
+    } // end fromBooleanArray
+
+    private void checkBounds(int x, int y)
+    {
+        if (!inBounds(x, y))
+        {
+            throw new ArrayIndexOutOfBoundsException("(" + x + ", " + y
+                    + ") is outside of " + width + "x" + height);
+        } // end if out of bounds
+    } // end checkBounds
+} // end LeafMask
@@ -0,0 +1,208 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 pthom.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package Generator;
+
+/**
+ * The parameters of one leaf, after any random variation, in a form that
+ * cannot change once made. The arrays are copied in and out, so a spec can
+ * be handed between threads or kept as a key without anyone changing the
+ * leaf underneath it.
+ *
+ * @author pthom
+ */
+public final class LeafSpec
+{
+    // image
+    public final int width;
+    public final int height;
+
+    // midrib
+    public final double midribLengthProportion;
+    public final double midribOffsetProportion;
+
+    // primary veins
+    public final String primaryVeinsStyle;
+    private final double[] primaryVeinParameters;
+
+    // lamina
+    public final String laminaStyle;
+    private final double[] laminaArgs;
+
+    // name of a MarginStyle
+    public final String marginStyle;
+
+    // picks the texture of the lamina, see LaminaTexture
+    public final long textureSeed;
+
+    /**
+     * @param width width of the image
+     * @param height height of the image
+     * @param midribLengthProportion how long the midrib is compared to the
+     * width of the image
+     * @param midribOffsetProportion how far the midrib is from the edge of
+     * the image
+     * @param primaryVeinsStyle the style of the primary veins
+     * @param primaryVeinParameters the parameters of the primary veins,
+     * copied
+     * @param laminaStyle the style of the lamina
+     * @param laminaArgs the parameters of the lamina, copied
+     */
+    public LeafSpec(
+            // image
+            int width,
+            int height,
+            // midrib
+            double midribLengthProportion,
+            double midribOffsetProportion,
+            // primary veins
+            String primaryVeinsStyle,
+            double[] primaryVeinParameters,
+            // lamina
+            String laminaStyle,
+            double[] laminaArgs)
+    {
+        this(width, height, midribLengthProportion, midribOffsetProportion,
+                primaryVeinsStyle, primaryVeinParameters, laminaStyle,
+                laminaArgs, MarginStyle.SMOOTH.name, 0);
+    } // end constructor
+
+    /**
+     * @param width width of the image
+     * @param height height of the image
+     * @param midribLengthProportion how long the midrib is compared to the
+     * width of the image
+     * @param midribOffsetProportion how far the midrib is from the edge of
+     * the image
+     * @param primaryVeinsStyle the style of the primary veins
+     * @param primaryVeinParameters the parameters of the primary veins,
+     * copied
+     * @param laminaStyle the style of the lamina
+     * @param laminaArgs the parameters of the lamina, copied
+     * @param marginStyle name of the pattern of the margin, see MarginStyle
+     * @param textureSeed picks the texture of the lamina
+     * @throws IllegalArgumentException if there is no such margin style
+     */
+    public LeafSpec(
+            // image
+            int width,
+            int height,
+            // midrib
+            double midribLengthProportion,
+            double midribOffsetProportion,
+            // primary veins
+            String primaryVeinsStyle,
+            double[] primaryVeinParameters,
+            // lamina
+            String laminaStyle,
+            double[] laminaArgs,
+            String marginStyle,
+            long textureSeed)
+    {
+        if (width <= 0 || height <= 0)
+        {
+            throw new IllegalArgumentException("Bad leaf size " + width
+                    + "x" + height);
+        } // end if bad size
+
+        this.width = width;
+        this.height = height;
+        this.midribLengthProportion = midribLengthProportion;
+        this.midribOffsetProportion = midribOffsetProportion;
+        this.primaryVeinsStyle = primaryVeinsStyle;
+        this.primaryVeinParameters = primaryVeinParameters.clone();
+        this.laminaStyle = laminaStyle;
+        this.laminaArgs = laminaArgs.clone();
+        this.marginStyle = MarginStyle.forName(marginStyle).name;
+        this.textureSeed = textureSeed;
+    } // end constructor
+
+    /**
+     * @return a copy of the parameters of the primary veins
+     */
+    public double[] getPrimaryVeinParameters()
+    {
+        return primaryVeinParameters.clone();
+    } // end getPrimaryVeinParameters
+
+    /**
+     * @return a copy of the parameters of the lamina
+     */
+    public double[] getLaminaArgs()
+    {
+        return laminaArgs.clone();
+    } // end getLaminaArgs
+
+    /**
+     * The vein parameters without a copy, for the Generator, which never
+     * changes them.
+     */
+    double[] primaryVeinParameters()
+    {
+        return primaryVeinParameters;
+    } // end primaryVeinParameters
+
+    /**
+     * The lamina parameters without a copy, for the Generator, which never
+     * changes them.
+     */
+    double[] laminaArgs()
+    {
+        return laminaArgs;
+    } // end laminaArgs
+
+    /**
+     * Builds the leaf this spec describes.
+     * @return new leaf
+     */
+    public Generator createGenerator()
+    {
+        return new Generator(this);
+    } // end createGenerator
+
+    /**
+     * Builds the leaf this spec describes, sharing geometry through a cache.
+     * @param cache cache of the geometry, null to build it
+     * @return new leaf
+     */
+    public Generator createGenerator(GeometryCache cache)
+    {
+        return new Generator(this, cache);
+    } // end createGenerator
+
+    /**
+     * Works out the leaf this spec describes without a pixel size.
+     * @return geometry of the leaf
+     */
+    public LeafGeometry createGeometry()
+    {
+        return LeafGeometry.create(
+                (double) width / height,
+                midribLengthProportion,
+                midribOffsetProportion,
+                primaryVeinsStyle,
+                primaryVeinParameters,
+                laminaArgs,
+                MarginStyle.forName(marginStyle));
+    } // end createGeometry
+} // end LeafSpec
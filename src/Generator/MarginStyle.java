@@ -0,0 +1,173 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 pthom.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package Generator;
+
+/**
+ * The pattern of the margin of a leaf: smooth, or a row of teeth along the
+ * outline. A toothed style is one period of its tooth profile, sampled into
+ * a small table, plus how long a tooth is along the margin and how far it
+ * sticks out. The rasterizer walks the margin, measures the arc length from
+ * the base of the leaf and reads the height of the tooth there from the
+ * table, so teeth cost the same at any resolution.
+ *
+ * The period is in units of the midrib length and the depth in units of the
+ * breadth, so the teeth keep their look when the leaf is drawn at another
+ * size.
+ *
+ * @author pthom
+ */
+public final class MarginStyle
+{
+    // samples of one period of a tooth profile, a power of two
+    public static final int TABLE_SIZE = 256;
+
+    public static final MarginStyle SMOOTH =
+            new MarginStyle("smooth", 1, 0, new float[TABLE_SIZE]);
+
+    // serrulate: many small teeth pointing towards the tip
+    public static final MarginStyle FINE_TOOTHED =
+            new MarginStyle("fine-toothed", 0.015, 0.025, saw(0.85));
+
+    // serrate: larger teeth pointing towards the tip
+    public static final MarginStyle SAW_TOOTHED =
+            new MarginStyle("saw-toothed", 0.05, 0.07, saw(0.8));
+
+    // dentate: symmetric teeth pointing straight out
+    public static final MarginStyle DENTATE =
+            new MarginStyle("dentate", 0.06, 0.08, triangle(0.4));
+
+    private static final MarginStyle[] STYLES =
+    {
+        SMOOTH, FINE_TOOTHED, SAW_TOOTHED, DENTATE
+    };
+
+    public final String name;
+    public final double period;     // length of a tooth / midrib length
+    public final double depth;      // height of a tooth / breadth
+    private final float[] profile;  // one period, 0 at the margin, 1 at a tip
+
+    private MarginStyle(String name, double period, double depth,
+            float[] profile)
+    {
+        this.name = name;
+        this.period = period;
+        this.depth = depth;
+        this.profile = profile;
+    } // end constructor
+
+    /**
+     * Looks up a style by its name.
+     * @param name name of the style, null or "" for smooth
+     * @return the style
+     * @throws IllegalArgumentException if there is no such style
+     */
+    public static MarginStyle forName(String name)
+    {
+        if (name == null || name.isEmpty())
+        {
+            return SMOOTH;
+        } // end if no name
+        for (MarginStyle style : STYLES)
+        {
+            if (style.name.equals(name))
+            {
+                return style;
+            } // end if found
+        } // end for styles
+        throw new IllegalArgumentException("Unknown margin style " + name
+                + ", expected one of " + String.join(", ", names()));
+    } // end forName
+
+    /**
+     * @return names of all margin styles
+     */
+    public static String[] names()
+    {
+        String[] names = new String[STYLES.length];
+        for (int i = 0; i < STYLES.length; i++)
+        {
+            names[i] = STYLES[i].name;
+        } // end for styles
+        return names;
+    } // end names
+
+    public boolean isSmooth()
+    {
+        return depth == 0;
+    } // end isSmooth
+
+    /**
+     * Gets the height of the tooth profile, linearly interpolated between
+     * the samples of the table.
+     * @param phase position along the margin in teeth, any value &gt;= 0
+     * @return 0 at the margin to 1 at the tip of a tooth
+     */
+    public double toothAt(double phase)
+    {
+        double t = phase * TABLE_SIZE;
+        int i = (int) t;
+        double f = t - i;
+        float a = profile[i & (TABLE_SIZE - 1)];
+        float b = profile[(i + 1) & (TABLE_SIZE - 1)];
+        return a + (b - a) * f;
+    } // end toothAt
+
+    /**
+     * A saw tooth: rises slowly for the given part of the period, then
+     * falls back quickly, so the teeth lean towards the tip of the leaf.
+     */
+    private static float[] saw(double rise)
+    {
+        float[] table = new float[TABLE_SIZE];
+        for (int i = 0; i < TABLE_SIZE; i++)
+        {
+            double t = (double) i / TABLE_SIZE;
+            table[i] = (float) (t < rise ? t / rise : (1 - t) / (1 - rise));
+        } // end for samples
+        return table;
+    } // end saw
+
+    /**
+     * A symmetric tooth taking the given part of the period to rise and
+     * the same to fall, with the rest of the period flat in between teeth.
+     */
+    private static float[] triangle(double half)
+    {
+        float[] table = new float[TABLE_SIZE];
+        for (int i = 0; i < TABLE_SIZE; i++)
+        {
+            double t = (double) i / TABLE_SIZE;
+            double v = t < half ? t / half
+                    : (t < 2 * half ? (2 * half - t) / half : 0);
+            table[i] = (float) v;
+        } // end for samples
+        return table;
+    } // end triangle
+
+    @Override
+    public String toString()
+    {
+        return name;
+    } // end toString
+} // end MarginStyle
@@ -0,0 +1,265 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 pthom.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package Generator;
+
+// imports
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A small set of square, tileable noise textures for the lamina. Each is
+ * fractal value noise: random values on a lattice that wraps around at the
+ * edges of the texture, smoothly interpolated, with four octaves of finer
+ * lattices added at half the strength each. Texels are stored as one byte
+ * each, stretched to the full 0 to 255 range.
+ *
+ * Building the textures is the only expensive part, so it happens once per
+ * (seed, count, size) and the result is kept in a small shared cache, see
+ * get. A set never changes once it is built and can be read by any number
+ * of render threads.
+ *
+ * @author pthom
+ */
+public final class NoiseTextures
+{
+    // cells across the texture of the coarsest octave
+    private static final int BASE_CELLS = 4;
+    private static final int OCTAVES = 4;
+
+    // sets kept by get, a batch only ever needs one
+    private static final int CACHE_CAPACITY = 4;
+    private static final LinkedHashMap<String, NoiseTextures> cache =
+            new LinkedHashMap<String, NoiseTextures>(8, 0.75f, true)
+            {
+                @Override
+                protected boolean removeEldestEntry(
+                        Map.Entry<String, NoiseTextures> eldest)
+                {
+                    return size() > CACHE_CAPACITY;
+                } // end removeEldestEntry
+            };
+
+    private final long seed;
+    private final int size;         // width and height, a power of two
+    private final int shift;        // log2 of size
+    private final byte[][] textures;
+
+    /**
+     * Checks the number and size of textures before any are built.
+     * @param count number of textures, at least one
+     * @param size width and height, a power of two of at least 32
+     * @throws IllegalArgumentException if either is not
+     */
+    public static void checkShape(int count, int size)
+    {
+        if (count < 1 || size < 32 || Integer.bitCount(size) != 1)
+        {
+            throw new IllegalArgumentException("Need at least one texture "
+                    + "with a power of two size of at least 32, not "
+                    + count + " of " + size);
+        } // end if bad shape
+    } // end checkShape
+
+    /**
+     * Builds a set of textures. Use get to share them between leaves.
+     * @param seed seed of the noise
+     * @param count number of textures
+     * @param size width and height of every texture, a power of two of at
+     * least 32
+     */
+    public NoiseTextures(long seed, int count, int size)
+    {
+        checkShape(count, size);
+        this.seed = seed;
+        this.size = size;
+        this.shift = Integer.numberOfTrailingZeros(size);
+        this.textures = new byte[count][];
+        for (int t = 0; t < count; t++)
+        {
+            textures[t] = build(SplitMix64.mix64(
+                    seed + (t + 1) * SplitMix64.GOLDEN_GAMMA));
+        } // end for textures
+    } // end constructor
+
+    /**
+     * Gets a set of textures from the shared cache, building it on a miss.
+     * @param seed seed of the noise
+     * @param count number of textures
+     * @param size width and height of every texture, a power of two
+     * @return cached or new textures
+     */
+    public static NoiseTextures get(long seed, int count, int size)
+    {
+        String key = seed + "/" + count + "/" + size;
+        synchronized (cache)
+        {
+            NoiseTextures textures = cache.get(key);
+            if (textures != null)
+            {
+                return textures;
+            } // end if hit
+        } // end synchronized
+
+        // built outside of the lock, a rare duplicate build does no harm
+        NoiseTextures built = new NoiseTextures(seed, count, size);
+        synchronized (cache)
+        {
+            NoiseTextures textures = cache.get(key);
+            if (textures == null)
+            {
+                cache.put(key, built);
+                textures = built;
+            } // end if still missing
+            return textures;
+        } // end synchronized
+    } // end get
+
+    public long getSeed()
+    {
+        return seed;
+    } // end getSeed
+
+    public int getCount()
+    {
+        return textures.length;
+    } // end getCount
+
+    public int getSize()
+    {
+        return size;
+    } // end getSize
+
+    int getShift()
+    {
+        return shift;
+    } // end getShift
+
+    /**
+     * The texels of one texture, row after row. Not copied, never change it.
+     */
+    byte[] getTexels(int index)
+    {
+        return textures[index];
+    } // end getTexels
+
+    /**
+     * Gets one texel.
+     * @param index which texture
+     * @param x x, wrapped around the size
+     * @param y y, wrapped around the size
+     * @return value between 0 and 255
+     */
+    public int getTexel(int index, int x, int y)
+    {
+        int mask = size - 1;
+        return textures[index][((y & mask) << shift) | (x & mask)] & 0xFF;
+    } // end getTexel
+
+    /**
+     * Sums the octaves of one texture and stretches them to bytes.
+     */
+    private byte[] build(long textureSeed)
+    {
+        double[] sum = new double[size * size];
+        double amplitude = 1.0;
+        for (int octave = 0; octave < OCTAVES; octave++)
+        {
+            int cells = BASE_CELLS << octave;
+            if (cells > size)
+            {
+                break;
+            } // end if finer than a texel
+            addOctave(sum, cells, amplitude,
+                    SplitMix64.mix64(textureSeed
+                            + (octave + 1) * SplitMix64.GOLDEN_GAMMA));
+            amplitude *= 0.5;
+        } // end for octaves
+
+        double min = Double.MAX_VALUE;
+        double max = -Double.MAX_VALUE;
+        for (double value : sum)
+        {
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+        } // end for texels
+        double scale = max > min ? 255.0 / (max - min) : 0;
+
+        byte[] texels = new byte[sum.length];
+        for (int i = 0; i < sum.length; i++)
+        {
+            texels[i] = (byte) Math.round((sum[i] - min) * scale);
+        } // end for texels
+        return texels;
+    } // end build
+
+    /**
+     * Adds one octave of value noise whose lattice of cells x cells values
+     * wraps around, so the texture tiles without a seam.
+     */
+    private void addOctave(double[] sum, int cells, double amplitude,
+            long octaveSeed)
+    {
+        double[] lattice = new double[cells * cells];
+        for (int i = 0; i < lattice.length; i++)
+        {
+            lattice[i] = SplitMix64.toDouble(SplitMix64.mix64(
+                    octaveSeed + (i + 1) * SplitMix64.GOLDEN_GAMMA));
+        } // end for lattice points
+
+        int texelsPerCell = size / cells;
+        double[] weights = new double[texelsPerCell];
+        for (int i = 0; i < texelsPerCell; i++)
+        {
+            // smoothstep, so the slope is continuous across cells
+            double t = (i + 0.5) / texelsPerCell;
+            weights[i] = t * t * (3 - 2 * t);
+        } // end for weights
+
+        for (int y = 0; y < size; y++)
+        {
+            int cy0 = y / texelsPerCell;
+            int cy1 = (cy0 + 1) % cells;
+            double wy = weights[y % texelsPerCell];
+            int row = y << shift;
+            for (int x = 0; x < size; x++)
+            {
+                int cx0 = x / texelsPerCell;
+                int cx1 = (cx0 + 1) % cells;
+                double wx = weights[x % texelsPerCell];
+                double top = lattice[cy0 * cells + cx0] * (1 - wx)
+                        + lattice[cy0 * cells + cx1] * wx;
+                double bottom = lattice[cy1 * cells + cx0] * (1 - wx)
+                        + lattice[cy1 * cells + cx1] * wx;
+                sum[row | x] += amplitude * (top * (1 - wy) + bottom * wy);
+            } // end for x
+        } // end for y
+    } // end addOctave
+
+    @Override
+    public String toString()
+    {
+        return textures.length + " noise textures of " + size + "x" + size
+                + ", seed " + seed;
+    } // end toString
+} // end NoiseTextures
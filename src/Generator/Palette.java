@@ -0,0 +1,167 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 pthom.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package Generator;
+
+// imports
+import java.awt.Color;
+
+/**
+ * The colors a leaf is drawn with. Unlike GenColor a palette never changes
+ * once it is made, so one palette can be shared by every render thread and
+ * two jobs running at the same time can each use their own.
+ *
+ * @author pthom
+ */
+public final class Palette
+{
+    public final Color lamina;
+    public final Color midrib;
+    public final Color veins;
+    public final Color background;
+
+    public Palette(Color lamina, Color midrib, Color veins, Color background)
+    {
+        if (lamina == null || midrib == null || veins == null
+                || background == null)
+        {
+            throw new IllegalArgumentException("Every color of a palette is needed");
+        } // end if missing color
+
+        this.lamina = lamina;
+        this.midrib = midrib;
+        this.veins = veins;
+        this.background = background;
+    } // end constructor
+
+    /**
+     * Takes a snapshot of the colors in GenColor, so later changes to
+     * GenColor do not affect leaves already being drawn.
+     * @return palette with the current GenColor colors
+     */
+    public static Palette defaults()
+    {
+        return new Palette(GenColor.lamina, GenColor.midrib, GenColor.veins,
+                GenColor.background);
+    } // end defaults
+
+    /**
+     * Parses the form written by toString: four colors, lamina, midrib,
+     * veins and background, as comma separated hex such as "#448f30".
+     * @param value text of the palette
+     * @return parsed palette
+     * @throws IllegalArgumentException if the text is not a palette
+     */
+    public static Palette parse(String value)
+    {
+        String[] parts = value.split(",");
+        if (parts.length != 4)
+        {
+            throw new IllegalArgumentException("Expected 4 comma separated "
+                    + "colors but got " + value);
+        } // end if wrong count
+
+        Color[] colors = new Color[4];
+        for (int i = 0; i < colors.length; i++)
+        {
+            String hex = parts[i].trim();
+            if (hex.startsWith("#"))
+            {
+                hex = hex.substring(1);
+            } // end if leading #
+            if (hex.length() != 6)
+            {
+                throw new IllegalArgumentException("Bad color " + parts[i]);
+            } // end if wrong length
+            try
+            {
+                colors[i] = new Color(Integer.parseInt(hex, 16));
+            } // end try
+            catch (NumberFormatException ex)
+            {
+                throw new IllegalArgumentException("Bad color " + parts[i]);
+            } // end catch
+        } // end for colors
+
+        return new Palette(colors[0], colors[1], colors[2], colors[3]);
+    } // end parse
+
+    public Palette withLamina(Color color)
+    {
+        return new Palette(color, midrib, veins, background);
+    } // end withLamina
+
+    public Palette withMidrib(Color color)
+    {
+        return new Palette(lamina, color, veins, background);
+    } // end withMidrib
+
+    public Palette withVeins(Color color)
+    {
+        return new Palette(lamina, midrib, color, background);
+    } // end withVeins
+
+    public Palette withBackground(Color color)
+    {
+        return new Palette(lamina, midrib, veins, color);
+    } // end withBackground
+
+    /**
+     * @param color color to describe
+     * @return color as "#rrggbb"
+     */
+    static String hex(Color color)
+    {
+        return String.format("#%06x", color.getRGB() & 0xffffff);
+    } // end hex
+
+    @Override
+    public boolean equals(Object other)
+    {
+        if (!(other instanceof Palette))
+        {
+            return false;
+        } // end if not a palette
+        Palette palette = (Palette) other;
+        return lamina.equals(palette.lamina) && midrib.equals(palette.midrib)
+                && veins.equals(palette.veins)
+                && background.equals(palette.background);
+    } // end equals
+
+    @Override
+    public int hashCode()
+    {
+        return ((lamina.hashCode() * 31 + midrib.hashCode()) * 31
+                + veins.hashCode()) * 31 + background.hashCode();
+    } // end hashCode
+
+    /**
+     * @return the palette in the form parse reads
+     */
+    @Override
+    public String toString()
+    {
+        return hex(lamina) + "," + hex(midrib) + "," + hex(veins) + ","
+                + hex(background);
+    } // end toString
+} // end Palette
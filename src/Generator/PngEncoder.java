@@ -0,0 +1,585 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 pthom.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package Generator;
+
+// imports
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.Raster;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * A PNG encoder made for leaf images. A leaf only has a handful of colors
+ * plus the antialiased blends between them, so most leaves fit into an
+ * indexed palette of at most 256 colors, which is a quarter of the size of
+ * 32 bit ARGB before compression even starts.
+ *
+ * Images with more colors fall back to RGB or RGBA with the row filter
+ * picked per row by the usual minimum-sum-of-absolute-differences
+ * heuristic. The deflater and all buffers are kept between images, so one
+ * encoder per thread encodes a whole batch without much garbage. Not
+ * thread safe.
+ *
+ * @author pthom
+ */
+public class PngEncoder
+{
+    private static final byte[] SIGNATURE =
+    {
+        (byte) 137, 80, 78, 71, 13, 10, 26, 10
+    };
+
+    // color types
+    private static final int COLOR_RGB = 2;
+    private static final int COLOR_INDEXED = 3;
+    private static final int COLOR_RGBA = 6;
+
+    // row filters
+    private static final int FILTER_NONE = 0;
+    private static final int FILTER_SUB = 1;
+    private static final int FILTER_UP = 2;
+    private static final int FILTER_AVERAGE = 3;
+    private static final int FILTER_PAETH = 4;
+
+    private final Deflater deflater;
+    private final CRC32 crc = new CRC32();
+    private boolean lossyReduction = false;
+
+    // reused between images
+    private final Buffer idat = new Buffer(64 * 1024);
+    private final Buffer output = new Buffer(64 * 1024);
+    private final byte[] chunkHeader = new byte[8];
+    private final byte[] crcBytes = new byte[4];
+    private int[] argb = new int[0];
+    private byte[] currentRow = new byte[0];
+    private byte[] previousRow = new byte[0];
+    private byte[][] filtered = new byte[5][0];
+
+    // palette, found with a small open addressing hash table
+    private final int[] palette = new int[256];
+    private final int[] hashKeys = new int[1024];
+    private final short[] hashValues = new short[1024];
+    private int paletteSize;
+
+    // channel values after lossy reduction, indexed by the bits dropped
+    private static final int[][] LEVELS = new int[5][];
+    static
+    {
+        for (int bits = 1; bits < LEVELS.length; bits++)
+        {
+            // 2^(8 - bits) levels spread over 0 to 255, so black and white stay
+            int steps = (256 >> bits) - 1;
+            LEVELS[bits] = new int[256];
+            for (int v = 0; v < 256; v++)
+            {
+                int level = (v * steps + 127) / 255;
+                LEVELS[bits][v] = (level * 255 + steps / 2) / steps;
+            } // end for values
+        } // end for bits
+    } // end static
+
+    // levels of the current image, null while it is encoded losslessly
+    private int[] levels;
+
+    /**
+     * Creates an encoder with the default deflate level.
+     */
+    public PngEncoder()
+    {
+        this(Deflater.DEFAULT_COMPRESSION);
+    } // end constructor
+
+    /**
+     * Creates an encoder.
+     * @param deflateLevel 0 (fastest) to 9 (smallest), or -1 for the default
+     */
+    public PngEncoder(int deflateLevel)
+    {
+        deflater = new Deflater(deflateLevel);
+    } // end constructor
+
+    public void setDeflateLevel(int deflateLevel)
+    {
+        deflater.setLevel(deflateLevel);
+    } // end setDeflateLevel
+
+    /**
+     * When on, images with more than 256 colors drop the lowest bits of
+     * every channel, one bit at a time up to four bits, until they fit into
+     * a palette. Off by default, which keeps every image lossless.
+     * @param lossyReduction whether colors may be reduced
+     */
+    public void setLossyReduction(boolean lossyReduction)
+    {
+        this.lossyReduction = lossyReduction;
+    } // end setLossyReduction
+
+    /**
+     * Frees the native memory of the deflater. The encoder cannot be used
+     * afterwards.
+     */
+    public void end()
+    {
+        deflater.end();
+    } // end end
+
+    /**
+     * Encodes an image into a new byte array.
+     * @param image image to encode
+     * @return the PNG file
+     * @throws IOException never, the image is encoded into memory
+     */
+    public byte[] encode(BufferedImage image) throws IOException
+    {
+        output.reset();
+        encode(image, output);
+        return output.toByteArray();
+    } // end encode
+
+    /**
+     * Encodes an image into a stream.
+     * @param image image to encode
+     * @param out stream to write the PNG file to
+     * @throws IOException if the stream fails
+     */
+    public void encode(BufferedImage image, OutputStream out) throws IOException
+    {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int[] pixels = getPixels(image);
+
+        // pick the smallest form the image fits into
+        int colorType;
+        int bitDepth = 8;
+        levels = null;
+        boolean indexed = buildPalette(pixels, width * height);
+        for (int bits = 1; !indexed && lossyReduction && bits < LEVELS.length; bits++)
+        {
+            levels = LEVELS[bits];
+            indexed = buildPalette(pixels, width * height);
+        } // end for lossy reduction
+
+        if (indexed)
+        {
+            colorType = COLOR_INDEXED;
+            bitDepth = paletteSize <= 2 ? 1 : paletteSize <= 4 ? 2
+                    : paletteSize <= 16 ? 4 : 8;
+        } // end if palette
+        else
+        {
+            levels = null;
+            colorType = hasAlpha(pixels, width * height) ? COLOR_RGBA : COLOR_RGB;
+        } // end else true color
+
+        out.write(SIGNATURE);
+
+        // header
+        byte[] ihdr = new byte[13];
+        putInt(ihdr, 0, width);
+        putInt(ihdr, 4, height);
+        ihdr[8] = (byte) bitDepth;
+        ihdr[9] = (byte) colorType;
+        writeChunk(out, "IHDR", ihdr, ihdr.length);
+
+        if (colorType == COLOR_INDEXED)
+        {
+            writePalette(out);
+        } // end if palette
+
+        // image data
+        idat.reset();
+        deflater.reset();
+        DeflaterOutputStream deflated = new DeflaterOutputStream(idat, deflater, 16 * 1024);
+        if (colorType == COLOR_INDEXED)
+        {
+            writeIndexedRows(deflated, pixels, width, height, bitDepth);
+        } // end if palette
+        else
+        {
+            writeTrueColorRows(deflated, pixels, width, height,
+                    colorType == COLOR_RGBA ? 4 : 3);
+        } // end else true color
+        deflated.finish();
+        writeChunk(out, "IDAT", idat.getArray(), idat.size());
+
+        writeChunk(out, "IEND", chunkHeader, 0);
+    } // end encode
+
+    /**
+     * Gets the ARGB pixels of an image, straight from its buffer when the
+     * image is a plain int ARGB image.
+     */
+    private int[] getPixels(BufferedImage image)
+    {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        Raster raster = image.getRaster();
+
+        if (image.getType() == BufferedImage.TYPE_INT_ARGB
+                && raster.getDataBuffer() instanceof DataBufferInt
+                && raster.getDataBuffer().getNumBanks() == 1
+                && raster.getSampleModel() instanceof SinglePixelPackedSampleModel
+                && ((SinglePixelPackedSampleModel) raster.getSampleModel())
+                        .getScanlineStride() == width
+                && raster.getSampleModelTranslateX() == 0
+                && raster.getSampleModelTranslateY() == 0)
+        {
+            return ((DataBufferInt) raster.getDataBuffer()).getData();
+        } // end if plain ARGB
+
+        if (argb.length < width * height)
+        {
+            argb = new int[width * height];
+        } // end if buffer too small
+        image.getRGB(0, 0, width, height, argb, 0, width);
+        return argb;
+    } // end getPixels
+
+    /**
+     * Collects the colors of the image after reduce.
+     * @return true if there are 256 colors or fewer
+     */
+    private boolean buildPalette(int[] pixels, int count)
+    {
+        Arrays.fill(hashValues, (short) -1);
+        paletteSize = 0;
+
+        int last = 0;
+        boolean haveLast = false;
+        for (int i = 0; i < count; i++)
+        {
+            if (haveLast && pixels[i] == last)
+            {
+                continue;
+            } // end if same as the pixel before, which is most of them
+            last = pixels[i];
+            haveLast = true;
+            int color = reduce(last);
+
+            if (lookup(color) < 0)
+            {
+                if (paletteSize == 256)
+                {
+                    return false;
+                } // end if too many colors
+                insert(color, paletteSize);
+                palette[paletteSize++] = color;
+            } // end if new color
+        } // end for pixels
+
+        return true;
+    } // end buildPalette
+
+    /**
+     * Rounds every color channel to the nearest of the current levels.
+     * Alpha is never reduced.
+     */
+    private int reduce(int color)
+    {
+        if (levels == null)
+        {
+            return color;
+        } // end if lossless
+        return (color & 0xFF000000)
+                | (levels[(color >>> 16) & 0xFF] << 16)
+                | (levels[(color >>> 8) & 0xFF] << 8)
+                | levels[color & 0xFF];
+    } // end reduce
+
+    private int slot(int color)
+    {
+        int h = color * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & (hashKeys.length - 1);
+    } // end slot
+
+    private int lookup(int color)
+    {
+        for (int s = slot(color); ; s = (s + 1) & (hashKeys.length - 1))
+        {
+            if (hashValues[s] < 0)
+            {
+                return -1;
+            } // end if empty slot
+            if (hashKeys[s] == color)
+            {
+                return hashValues[s];
+            } // end if found
+        } // end for slots
+    } // end lookup
+
+    private void insert(int color, int index)
+    {
+        int s = slot(color);
+        while (hashValues[s] >= 0)
+        {
+            s = (s + 1) & (hashKeys.length - 1);
+        } // end while taken
+        hashKeys[s] = color;
+        hashValues[s] = (short) index;
+    } // end insert
+
+    private static boolean hasAlpha(int[] pixels, int count)
+    {
+        for (int i = 0; i < count; i++)
+        {
+            if ((pixels[i] >>> 24) != 0xFF)
+            {
+                return true;
+            } // end if transparent
+        } // end for pixels
+        return false;
+    } // end hasAlpha
+
+    /**
+     * Writes PLTE, and tRNS when any palette color is not opaque.
+     */
+    private void writePalette(OutputStream out) throws IOException
+    {
+        byte[] plte = new byte[paletteSize * 3];
+        byte[] trns = new byte[paletteSize];
+        boolean anyAlpha = false;
+        for (int i = 0; i < paletteSize; i++)
+        {
+            int color = palette[i];
+            plte[i * 3] = (byte) (color >>> 16);
+            plte[i * 3 + 1] = (byte) (color >>> 8);
+            plte[i * 3 + 2] = (byte) color;
+            trns[i] = (byte) (color >>> 24);
+            anyAlpha |= (color >>> 24) != 0xFF;
+        } // end for palette
+
+        writeChunk(out, "PLTE", plte, plte.length);
+        if (anyAlpha)
+        {
+            writeChunk(out, "tRNS", trns, trns.length);
+        } // end if any alpha
+    } // end writePalette
+
+    /**
+     * Writes palette indices. Indexed images compress best without any
+     * row filter, so every row uses filter none.
+     */
+    private void writeIndexedRows(OutputStream out, int[] pixels,
+            int width, int height, int bitDepth) throws IOException
+    {
+        int rowBytes = (width * bitDepth + 7) / 8;
+        ensureRowBuffers(rowBytes);
+        int perByte = 8 / bitDepth;
+
+        for (int y = 0; y < height; y++)
+        {
+            int rowStart = y * width;
+            Arrays.fill(currentRow, 0, rowBytes, (byte) 0);
+            int last = 0;
+            int lastIndex = -1;
+            for (int x = 0; x < width; x++)
+            {
+                int color = pixels[rowStart + x];
+                if (lastIndex < 0 || color != last)
+                {
+                    last = color;
+                    lastIndex = lookup(reduce(color));
+                } // end if color changed
+
+                if (bitDepth == 8)
+                {
+                    currentRow[x] = (byte) lastIndex;
+                } // end if byte per pixel
+                else
+                {
+                    int shift = 8 - bitDepth * (x % perByte + 1);
+                    currentRow[x / perByte] |= (byte) (lastIndex << shift);
+                } // end else packed pixels
+            } // end for x values
+
+            out.write(FILTER_NONE);
+            out.write(currentRow, 0, rowBytes);
+        } // end for rows
+    } // end writeIndexedRows
+
+    /**
+     * Writes RGB or RGBA rows, each with the filter that gives the smallest
+     * sum of absolute values.
+     */
+    private void writeTrueColorRows(OutputStream out, int[] pixels,
+            int width, int height, int bpp) throws IOException
+    {
+        int rowBytes = width * bpp;
+        ensureRowBuffers(rowBytes);
+        Arrays.fill(previousRow, 0, rowBytes, (byte) 0);
+
+        for (int y = 0; y < height; y++)
+        {
+            int rowStart = y * width;
+            for (int x = 0, b = 0; x < width; x++)
+            {
+                int color = pixels[rowStart + x];
+                currentRow[b++] = (byte) (color >>> 16);
+                currentRow[b++] = (byte) (color >>> 8);
+                currentRow[b++] = (byte) color;
+                if (bpp == 4)
+                {
+                    currentRow[b++] = (byte) (color >>> 24);
+                } // end if alpha
+            } // end for x values
+
+            int best = chooseFilter(rowBytes, bpp);
+            out.write(best);
+            out.write(filtered[best], 0, rowBytes);
+
+            byte[] swap = previousRow;
+            previousRow = currentRow;
+            currentRow = swap;
+        } // end for rows
+    } // end writeTrueColorRows
+
+    /**
+     * Filters the current row every way and picks the smallest.
+     * @return filter type, filtered[type] holds the filtered row
+     */
+    private int chooseFilter(int rowBytes, int bpp)
+    {
+        int best = FILTER_NONE;
+        long bestSum = Long.MAX_VALUE;
+
+        for (int f = FILTER_NONE; f <= FILTER_PAETH; f++)
+        {
+            byte[] row = filtered[f];
+            long sum = 0;
+            for (int i = 0; i < rowBytes; i++)
+            {
+                int raw = currentRow[i] & 0xFF;
+                int left = i >= bpp ? currentRow[i - bpp] & 0xFF : 0;
+                int up = previousRow[i] & 0xFF;
+                int upLeft = i >= bpp ? previousRow[i - bpp] & 0xFF : 0;
+                int value;
+                switch (f)
+                {
+                    case FILTER_SUB:
+                        value = raw - left;
+                        break;
+                    case FILTER_UP:
+                        value = raw - up;
+                        break;
+                    case FILTER_AVERAGE:
+                        value = raw - ((left + up) >>> 1);
+                        break;
+                    case FILTER_PAETH:
+                        value = raw - paeth(left, up, upLeft);
+                        break;
+                    default:
+                        value = raw;
+                        break;
+                } // end switch
+
+                row[i] = (byte) value;
+                sum += Math.abs((byte) value);
+            } // end for bytes
+
+            if (sum < bestSum)
+            {
+                bestSum = sum;
+                best = f;
+            } // end if smaller
+        } // end for filters
+
+        return best;
+    } // end chooseFilter
+
+    private static int paeth(int a, int b, int c)
+    {
+        int p = a + b - c;
+        int pa = Math.abs(p - a);
+        int pb = Math.abs(p - b);
+        int pc = Math.abs(p - c);
+        if (pa <= pb && pa <= pc)
+        {
+            return a;
+        } // end if a closest
+        return pb <= pc ? b : c;
+    } // end paeth
+
+    private void ensureRowBuffers(int rowBytes)
+    {
+        if (currentRow.length < rowBytes)
+        {
+            currentRow = new byte[rowBytes];
+            previousRow = new byte[rowBytes];
+            for (int f = 0; f < filtered.length; f++)
+            {
+                filtered[f] = new byte[rowBytes];
+            } // end for filters
+        } // end if buffers too small
+    } // end ensureRowBuffers
+
+    private void writeChunk(OutputStream out, String type, byte[] data, int length)
+            throws IOException
+    {
+        putInt(chunkHeader, 0, length);
+        for (int i = 0; i < 4; i++)
+        {
+            chunkHeader[4 + i] = (byte) type.charAt(i);
+        } // end for type
+
+        crc.reset();
+        crc.update(chunkHeader, 4, 4);
+        crc.update(data, 0, length);
+
+        out.write(chunkHeader, 0, 8);
+        out.write(data, 0, length);
+        putInt(crcBytes, 0, (int) crc.getValue());
+        out.write(crcBytes);
+    } // end writeChunk
+
+    private static void putInt(byte[] bytes, int offset, int value)
+    {
+        bytes[offset] = (byte) (value >>> 24);
+        bytes[offset + 1] = (byte) (value >>> 16);
+        bytes[offset + 2] = (byte) (value >>> 8);
+        bytes[offset + 3] = (byte) value;
+    } // end putInt
+
+    /**
+     * A byte array stream whose array can be read without copying.
+     */
+    private static class Buffer extends ByteArrayOutputStream
+    {
+        Buffer(int size)
+        {
+            super(size);
+        } // end constructor
+
+        byte[] getArray()
+        {
+            return buf;
+        } // end getArray
+    } // end Buffer
+} // end PngEncoder
@@ -0,0 +1,128 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 pthom.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package Generator;
+
+// imports
+import java.awt.image.BufferedImage;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps int ARGB images of finished leaves around so the next leaf of the
+ * same size can be rendered into one of them instead of a new image. The
+ * renderer writes every pixel, so a pooled image needs no clearing.
+ *
+ * Images are kept by size. In a pipeline an image is taken by a render
+ * thread and given back by whichever thread is done with it last, so the
+ * pool is shared by all threads rather than kept per thread.
+ *
+ * @author pthom
+ */
+public class RasterPool
+{
+    private final int capacity;
+    private final ConcurrentHashMap<Long, Queue<BufferedImage>> pools =
+            new ConcurrentHashMap<>();
+    private final AtomicInteger pooled = new AtomicInteger();
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong reused = new AtomicLong();
+
+    /**
+     * Constructor.
+     * @param capacity most images kept at once, over all sizes
+     */
+    public RasterPool(int capacity)
+    {
+        this.capacity = capacity;
+    } // end constructor
+
+    /**
+     * Takes an image from the pool, or makes one if there is none of that
+     * size. The contents are whatever the last leaf left in it.
+     * @param width width of the image
+     * @param height height of the image
+     * @return int ARGB image of the given size
+     */
+    public BufferedImage acquire(int width, int height)
+    {
+        Queue<BufferedImage> pool = pools.get(key(width, height));
+        BufferedImage image = pool != null ? pool.poll() : null;
+        if (image != null)
+        {
+            pooled.decrementAndGet();
+            reused.incrementAndGet();
+            return image;
+        } // end if pooled
+
+        created.incrementAndGet();
+        return new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+    } // end acquire
+
+    /**
+     * Gives an image back. Nobody may use it afterwards. Images that are not
+     * int ARGB, and any image while the pool is full, are left to the garbage
+     * collector.
+     * @param image image to give back, may be null
+     */
+    public void release(BufferedImage image)
+    {
+        if (image == null || image.getType() != BufferedImage.TYPE_INT_ARGB)
+        {
+            return;
+        } // end if not poolable
+
+        if (pooled.incrementAndGet() > capacity)
+        {
+            pooled.decrementAndGet();
+            return;
+        } // end if full
+
+        pools.computeIfAbsent(key(image.getWidth(), image.getHeight()),
+                k -> new ConcurrentLinkedQueue<>()).offer(image);
+    } // end release
+
+    private static Long key(int width, int height)
+    {
+        return ((long) width << 32) | (height & 0xffffffffL);
+    } // end key
+
+    /**
+     * @return number of images made because none was pooled
+     */
+    public long getCreatedCount()
+    {
+        return created.get();
+    } // end getCreatedCount
+
+    /**
+     * @return number of images taken from the pool
+     */
+    public long getReusedCount()
+    {
+        return reused.get();
+    } // end getReusedCount
+} // end RasterPool
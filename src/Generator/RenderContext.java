@@ -0,0 +1,109 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 pthom.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package Generator;
+
+/**
+ * Everything about how a leaf is drawn that is not the leaf itself: its
+ * palette, whether edges are antialiased and the noise textures of the
+ * lamina. Immutable, so a batch makes one and hands it to every render
+ * thread.
+ *
+ * @author pthom
+ */
+public final class RenderContext
+{
+    public final Palette palette;
+    public final boolean antialias;
+    public final NoiseTextures textures;    // null for a flat lamina
+    public final double textureStrength;    // 1 for the default strength
+
+    public RenderContext(Palette palette, boolean antialias)
+    {
+        this(palette, antialias, null, 0);
+    } // end constructor
+
+    /**
+     * Constructor.
+     * @param palette colors of the leaf
+     * @param antialias whether edges are antialiased
+     * @param textures textures of the lamina, null for a flat lamina
+     * @param textureStrength how strong the texture is, 1 for the default
+     */
+    public RenderContext(Palette palette, boolean antialias,
+            NoiseTextures textures, double textureStrength)
+    {
+        if (palette == null)
+        {
+            throw new IllegalArgumentException("No palette");
+        } // end if no palette
+
+        this.palette = palette;
+        this.antialias = antialias;
+        this.textures = textures;
+        this.textureStrength = textureStrength;
+    } // end constructor
+
+    /**
+     * @param antialias whether edges are antialiased
+     * @return context with a snapshot of the GenColor colors
+     */
+    public static RenderContext fromDefaults(boolean antialias)
+    {
+        return new RenderContext(Palette.defaults(), antialias);
+    } // end fromDefaults
+
+    public RenderContext withPalette(Palette palette)
+    {
+        return new RenderContext(palette, antialias, textures, textureStrength);
+    } // end withPalette
+
+    public RenderContext withAntialias(boolean antialias)
+    {
+        return new RenderContext(palette, antialias, textures, textureStrength);
+    } // end withAntialias
+
+    public RenderContext withTextures(NoiseTextures textures, double strength)
+    {
+        return new RenderContext(palette, antialias, textures, strength);
+    } // end withTextures
+
+    /**
+     * Picks the texture of one leaf.
+     * @param seed texture seed of the leaf
+     * @param height height of the image
+     * @param centerY y of the midrib
+     * @param halfBreadth distance from the midrib to the margin
+     * @return texture of the lamina, null if the lamina is flat
+     */
+    public LaminaTexture createTexture(long seed, int height, double centerY,
+            double halfBreadth)
+    {
+        if (textures == null || textureStrength <= 0)
+        {
+            return null;
+        } // end if flat
+        return new LaminaTexture(textures, seed, palette.lamina.getRGB(),
+                textureStrength, height, centerY, halfBreadth);
+    } // end createTexture
+} // end RenderContext
@@ -0,0 +1,60 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 pthom.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package Generator;
+
+/**
+ * SplitMix64, the mixing function behind every seeded stream of the
+ * program: the leaf streams of a batch and the noise textures of the
+ * lamina. A stream adds GOLDEN_GAMMA to its state for every value and
+ * returns mix64 of the new state.
+ *
+ * @author pthom
+ */
+public final class SplitMix64
+{
+    // step of the state, the odd number closest to 2^64 / golden ratio
+    public static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+    /**
+     * The finalizer of SplitMix64, mixes all bits of the input.
+     * @param z value to mix
+     * @return mixed value
+     */
+    public static long mix64(long z)
+    {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    } // end mix64
+
+    /**
+     * Turns the top 53 bits of a mixed value into a double.
+     * @param bits output of mix64
+     * @return double in [0, 1)
+     */
+    public static double toDouble(long bits)
+    {
+        return (bits >>> 11) * 0x1.0p-53;
+    } // end toDouble
+} // end SplitMix64
@@ -0,0 +1,261 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 pthom.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package Generator;
+
+// imports
+import java.awt.Color;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writes a leaf as a small SVG document straight from its geometry, without
+ * going through Graphics2D: the lamina outline as one path whose rise and
+ * fall are true elliptical arcs, the midrib as a polyline and the primary
+ * veins as one path of line segments. Coordinates are the pixels of the
+ * Generator, so the SVG lines up with the PNG of the same leaf.
+ *
+ * @author pthom
+ */
+public class SvgWriter
+{
+    private final StringBuilder svg = new StringBuilder(1024);
+
+    /**
+     * Creates the SVG document of a leaf.
+     * @param leaf leaf to write
+     * @return SVG document
+     */
+    public String write(Generator leaf)
+    {
+        return write(leaf, Palette.defaults());
+    } // end write
+
+    /**
+     * Creates the SVG document of a leaf.
+     * @param leaf leaf to write
+     * @param palette colors of the leaf
+     * @return SVG document
+     */
+    public String write(Generator leaf, Palette palette)
+    {
+        svg.setLength(0);
+        int width = leaf.getWidth();
+        int height = leaf.getHeight();
+
+        svg.append("<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"")
+                .append(width).append("\" height=\"").append(height)
+                .append("\" viewBox=\"0 0 ").append(width).append(' ')
+                .append(height).append("\">\n");
+        svg.append("<rect width=\"100%\" height=\"100%\" fill=\"")
+                .append(Palette.hex(palette.background)).append("\"/>\n");
+
+        appendLamina(leaf.lamina, height / 2, palette.lamina, width);
+        appendMidrib(leaf, palette.midrib);
+        appendVeins(leaf.getVeinGeometry(), palette.veins);
+
+        svg.append("</svg>\n");
+        return svg.toString();
+    } // end write
+
+    /**
+     * Writes the SVG document of a leaf to a writer.
+     * @param leaf leaf to write
+     * @param out where the document goes, not closed
+     * @throws IOException if writing failed
+     */
+    public void write(Generator leaf, Writer out) throws IOException
+    {
+        out.write(write(leaf));
+    } // end write
+
+    /**
+     * Writes the SVG document of a leaf to a writer.
+     * @param leaf leaf to write
+     * @param palette colors of the leaf
+     * @param out where the document goes, not closed
+     * @throws IOException if writing failed
+     */
+    public void write(Generator leaf, Palette palette, Writer out)
+            throws IOException
+    {
+        out.write(write(leaf, palette));
+    } // end write
+
+    /**
+     * The outline, clockwise from the left tip: the top left quarter of the
+     * rise ellipse, the flat top, the right half of the fall ellipse, the
+     * flat bottom and the bottom left quarter of the rise ellipse. A toothed
+     * margin has no closed form, so it is written as one point per column.
+     */
+    private void appendLamina(Generator.Lamina lamina, double centerY,
+            Color color, int width)
+    {
+        LaminaRasterizer rasterizer = lamina.getRasterizer();
+        if (rasterizer.isToothed())
+        {
+            appendToothedLamina(rasterizer.computeColumns(width, false),
+                    centerY, color);
+            return;
+        } // end if toothed
+
+        EllipseMath.Ellipse rise = lamina.riseEllipse;
+        EllipseMath.Ellipse fall = lamina.fallEllipse;
+        double riseEnd = lamina.getRiseEnd();
+        double fallStart = lamina.getFallStart();
+        double top = centerY - rise.getK();
+        double bottom = centerY + rise.getK();
+
+        svg.append("<path fill=\"").append(Palette.hex(color)).append("\" d=\"M");
+        point(riseEnd - rise.getH(), centerY);
+        arc(rise, riseEnd, top);
+        svg.append('L');
+        point(fallStart, top);
+        arc(fall, fallStart + fall.getH(), centerY);
+        arc(fall, fallStart, bottom);
+        svg.append('L');
+        point(riseEnd, bottom);
+        arc(rise, riseEnd - rise.getH(), centerY);
+        svg.append("Z\"/>\n");
+    } // end appendLamina
+
+    /**
+     * The outline of a toothed margin: the top from left to right, then the
+     * bottom from right to left, through the pixel centers.
+     */
+    private void appendToothedLamina(double[] columns, double centerY,
+            Color color)
+    {
+        int first = 0;
+        while (first < columns.length && columns[first] <= 0)
+        {
+            first++;
+        } // end while outside of the leaf
+        int last = columns.length - 1;
+        while (last > first && columns[last] <= 0)
+        {
+            last--;
+        } // end while outside of the leaf
+        if (first > last)
+        {
+            return;
+        } // end if no leaf
+
+        svg.append("<path fill=\"").append(Palette.hex(color)).append("\" d=\"M");
+        for (int x = first; x <= last; x++)
+        {
+            if (x > first)
+            {
+                svg.append('L');
+            } // end if not first
+            point(x + 0.5, centerY - Math.max(columns[x], 0));
+        } // end for top
+        for (int x = last; x >= first; x--)
+        {
+            svg.append('L');
+            point(x + 0.5, centerY + Math.max(columns[x], 0));
+        } // end for bottom
+        svg.append("Z\"/>\n");
+    } // end appendToothedLamina
+
+    private void appendMidrib(Generator leaf, Color color)
+    {
+        // same end point as createBufferedImage draws
+        int[][] points = leaf.veins.midrib.getMidribPoints();
+        points[0][1] = Math.min(points[0][1], leaf.lamina.getTipX() - 1);
+
+        svg.append("<polyline fill=\"none\" stroke=\"")
+                .append(Palette.hex(color)).append("\" points=\"");
+        for (int i = 0; i < points[0].length; i++)
+        {
+            if (i > 0)
+            {
+                svg.append(' ');
+            } // end if not first
+            svg.append(points[0][i]).append(',').append(points[1][i]);
+        } // end for points
+        svg.append("\"/>\n");
+    } // end appendMidrib
+
+    private void appendVeins(VeinGeometry veins, Color color)
+    {
+        if (veins.getSegmentCount() == 0)
+        {
+            return;
+        } // end if no veins
+
+        svg.append("<path fill=\"none\" stroke=\"")
+                .append(Palette.hex(color)).append("\" d=\"");
+        for (int s = 0; s < veins.getSegmentCount(); s++)
+        {
+            svg.append('M');
+            point(veins.getX0(s), veins.getY0(s));
+            svg.append('L');
+            point(veins.getX1(s), veins.getY1(s));
+        } // end for segments
+        svg.append("\"/>\n");
+    } // end appendVeins
+
+    /**
+     * Appends a clockwise arc along an ellipse to the given end point.
+     */
+    private void arc(EllipseMath.Ellipse ellipse, double x, double y)
+    {
+        svg.append('A');
+        number(ellipse.getH());
+        svg.append(' ');
+        number(ellipse.getK());
+        svg.append(" 0 0 1 ");
+        point(x, y);
+    } // end arc
+
+    private void point(double x, double y)
+    {
+        number(x);
+        svg.append(' ');
+        number(y);
+    } // end point
+
+    /**
+     * Appends a number with at most two decimals and no trailing zeros.
+     */
+    private void number(double value)
+    {
+        long hundredths = Math.round(value * 100);
+        if (hundredths < 0)
+        {
+            svg.append('-');
+            hundredths = -hundredths;
+        } // end if negative
+        svg.append(hundredths / 100);
+        int fraction = (int) (hundredths % 100);
+        if (fraction != 0)
+        {
+            svg.append('.').append(fraction / 10);
+            if (fraction % 10 != 0)
+            {
+                svg.append(fraction % 10);
+            } // end if second decimal
+        } // end if fraction
+    } // end number
+} // end SvgWriter
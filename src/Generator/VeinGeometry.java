@@ -0,0 +1,197 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 pthom.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package Generator;
+
+// imports
+import java.awt.Graphics2D;
+
+/**
+ * The primary veins of one leaf as plain line segments, in pixels, already
+ * cut off at the margin. Built once per Generator and then cast onto the
+ * mask, drawn to a Graphics2D or exported, so the vein math only happens
+ * once.
+ *
+ * @author pthom
+ */
+public class VeinGeometry
+{
+    // x0, y0, x1, y1 of every segment, one after another
+    private final float[] coordinates;
+
+    /**
+     * Constructor.
+     * @param coordinates {x0, y0, x1, y1} of every segment, one after
+     * another. Not copied.
+     */
+    public VeinGeometry(float[] coordinates)
+    {
+        if (coordinates.length % 4 != 0)
+        {
+            throw new IllegalArgumentException(
+                    "Need 4 coordinates per segment, got " + coordinates.length);
+        } // end if not whole segments
+
+        this.coordinates = coordinates;
+    } // end constructor
+
+    /**
+     * Builds the segments of pinnate veins. Every vein branches off the
+     * midrib twice, once up and once down, at the same angle.
+     * @param generationParameters {number of veins on each side, angle in
+     * degrees, length of vein 1, length of vein 2, ...}, lengths in
+     * proportion to the midrib
+     * @param midribStart x of the start of the midrib
+     * @param midribLength length of the midrib in pixels
+     * @param midribY y of the midrib
+     * @param margin rasterizer of the margin that cuts off the veins, may
+     * be null
+     * @return geometry of the veins
+     */
+    public static VeinGeometry pinnate(
+            double[] generationParameters,
+            int midribStart,
+            int midribLength,
+            int midribY,
+            LaminaRasterizer margin)
+    {
+        int numBranchingVeins = (int) generationParameters[0];
+        double angleOfVeins = Math.toRadians(generationParameters[1]);
+        double xUnit = Math.cos(angleOfVeins);
+        double yUnit = Math.sin(angleOfVeins);
+        float[] coordinates = new float[numBranchingVeins * 8];
+
+        for (int i = 0; i < numBranchingVeins; i++)
+        {
+            double branchLength = generationParameters[i + 2] * midribLength;
+            double branchPosition = midribStart
+                    + (midribLength / ((float) (numBranchingVeins + 1))) * (i + 1);
+
+            int xStart = (int) Math.round(branchPosition);
+
+            // cut the vein where it first crosses the margin, the bottom
+            // vein mirrors the top one
+            double length = branchLength;
+            if (margin != null)
+            {
+                length = Math.min(length,
+                        margin.distanceToMargin(xStart, midribY, xUnit, -yUnit));
+            } // end if margin
+
+            float xEnd = (float) (xStart + xUnit * length);
+            float yDiff = (float) (yUnit * length);
+
+            // top
+            int c = i * 8;
+            coordinates[c] = xStart;
+            coordinates[c + 1] = midribY;
+            coordinates[c + 2] = xEnd;
+            coordinates[c + 3] = midribY - yDiff;
+            // bottom
+            coordinates[c + 4] = xStart;
+            coordinates[c + 5] = midribY;
+            coordinates[c + 6] = xEnd;
+            coordinates[c + 7] = midribY + yDiff;
+        } // end for veins
+
+        return new VeinGeometry(coordinates);
+    } // end pinnate
+
+    public int getSegmentCount()
+    {
+        return coordinates.length / 4;
+    } // end getSegmentCount
+
+    public float getX0(int segment)
+    {
+        return coordinates[segment * 4];
+    } // end getX0
+
+    public float getY0(int segment)
+    {
+        return coordinates[segment * 4 + 1];
+    } // end getY0
+
+    public float getX1(int segment)
+    {
+        return coordinates[segment * 4 + 2];
+    } // end getX1
+
+    public float getY1(int segment)
+    {
+        return coordinates[segment * 4 + 3];
+    } // end getY1
+
+    /**
+     * Gets the backing array, for caching or serializing.
+     * @return {x0, y0, x1, y1} of every segment, not a copy
+     */
+    public float[] getCoordinates()
+    {
+        return coordinates;
+    } // end getCoordinates
+
+    /**
+     * Sets the cells of the mask that the veins pass through, one cell per
+     * step along the longer axis of each segment.
+     * @param leafMask mask to edit
+     * @return the same mask
+     */
+    public LeafMask cast(LeafMask leafMask)
+    {
+        for (int c = 0; c < coordinates.length; c += 4)
+        {
+            double x0 = Math.round(coordinates[c]);
+            double y0 = Math.round(coordinates[c + 1]);
+            double dx = Math.round(coordinates[c + 2]) - x0;
+            double dy = Math.round(coordinates[c + 3]) - y0;
+            int steps = (int) Math.max(Math.abs(dx), Math.abs(dy));
+
+            for (int s = 0; s < steps; s++)
+            {
+                // draw onto mask, ignoring anything off the edge
+                leafMask.setIfInBounds(
+                        (int) Math.round(x0 + dx * s / steps),
+                        (int) Math.round(y0 + dy * s / steps));
+            } // end for steps
+        } // end for segments
+
+        return leafMask;
+    } // end cast
+
+    /**
+     * Draws every segment with the current color of the graphics object.
+     * @param g2 graphics object to draw to
+     */
+    public void draw(Graphics2D g2)
+    {
+        for (int c = 0; c < coordinates.length; c += 4)
+        {
+            g2.drawLine(
+                    Math.round(coordinates[c + 2]),
+                    Math.round(coordinates[c + 3]),
+                    Math.round(coordinates[c]),
+                    Math.round(coordinates[c + 1]));
+        } // end for segments
+    } // end draw
+} // end VeinGeometry
@@ -0,0 +1,140 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 pthom.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package Batch;
+
+// imports
+import Generator.GeometryCache;
+import Generator.LeafSpec;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+
+/**
+ * Checks that a leaf rendered through a GeometryCache does not depend on
+ * which leaf filled its entry. Every sampled leaf gets a twin that differs
+ * by much less than a pixel, so both share one entry. The pair is rendered
+ * through a new cache in both orders, and each leaf has to come out the
+ * same both times.
+ *
+ * Usage: ant stress, or after it
+ *        java -cp build/stress/classes:build/classes Batch.GeometryCacheOrderTest
+ *        [--count N] [--seed N]
+ *
+ * Exits with 1 if any leaf differs, or if no pair shared an entry.
+ *
+ * @author pthom
+ */
+public class GeometryCacheOrderTest
+{
+    /**
+     * @param args the command line arguments, see the class comment
+     */
+    public static void main(String[] args) throws Exception
+    {
+        int count = 64;
+        long seed = 42;
+        for (int i = 0; i + 1 < args.length; i += 2)
+        {
+            switch (args[i])
+            {
+                case "--count":
+                    count = Integer.parseInt(args[i + 1]);
+                    break;
+                case "--seed":
+                    seed = Long.parseLong(args[i + 1]);
+                    break;
+                default:
+                    System.err.println("Unknown option " + args[i]);
+                    System.exit(2);
+            } // end switch
+        } // end for arguments
+
+        BatchParameters parameters = new BatchParameters();
+        parameters.width = 640;
+        parameters.height = 360;
+        parameters.seed = seed;
+        BatchGenerator batch = new BatchGenerator(parameters);
+
+        int shared = 0;
+        int mismatches = 0;
+        for (int i = 0; i < count; i++)
+        {
+            LeafSpec first = batch.sampleLeaf(i).toSpec();
+            LeafSpec second = twin(first);
+
+            GeometryCache forward = new GeometryCache(4);
+            int[] firstForward = render(first, forward);
+            int[] secondForward = render(second, forward);
+
+            GeometryCache backward = new GeometryCache(4);
+            int[] secondBackward = render(second, backward);
+            int[] firstBackward = render(first, backward);
+
+            if (forward.getHitCount() == 1)
+            {
+                shared++;
+            } // end if one entry
+
+            if (!Arrays.equals(firstForward, firstBackward)
+                    || !Arrays.equals(secondForward, secondBackward))
+            {
+                mismatches++;
+                System.err.println("Leaf " + i
+                        + " depends on the order of the cache");
+            } // end if differs
+        } // end for leaves
+
+        System.out.printf("%d pairs, %d shared an entry, %d differ%n",
+                count, shared, mismatches);
+        System.exit(mismatches == 0 && shared > 0 ? 0 : 1);
+    } // end main
+
+    /**
+     * Makes a leaf that differs from another by a small fraction of a
+     * pixel: a slightly longer midrib, broader lamina and steeper veins.
+     */
+    private static LeafSpec twin(LeafSpec spec)
+    {
+        double[] veins = spec.getPrimaryVeinParameters();
+        if (veins.length > 1)
+        {
+            veins[1] += 1e-3;
+        } // end if angle
+        double[] lamina = spec.getLaminaArgs();
+        lamina[0] *= 1 + 1e-4;
+        return new LeafSpec(spec.width, spec.height,
+                spec.midribLengthProportion * (1 + 1e-6),
+                spec.midribOffsetProportion,
+                spec.primaryVeinsStyle, veins,
+                spec.laminaStyle, lamina,
+                spec.marginStyle, spec.textureSeed);
+    } // end twin
+
+    private static int[] render(LeafSpec spec, GeometryCache cache)
+    {
+        BufferedImage image = spec.createGenerator(cache)
+                .createBufferedImage(true);
+        return ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+    } // end render
+} // end GeometryCacheOrderTest
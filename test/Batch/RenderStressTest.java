@@ -0,0 +1,229 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 pthom.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package Batch;
+
+// imports
+import Generator.GenColor;
+import Generator.Generator;
+import Generator.LeafSpec;
+import Generator.Palette;
+import Generator.RenderContext;
+import Generator.SplitMix64;
+import Generator.SvgWriter;
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Stress test for rendering leaves on several threads. Every leaf is first
+ * rendered on one thread, once per palette, and its pixels and SVG are
+ * hashed. Then the same leaves are rendered again and again by a thread
+ * pool in a shuffled order, half of them from one Generator shared by all
+ * threads and half from a new one, with two palettes mixed, while another
+ * thread keeps changing the GenColor colors. Every hash has to match the
+ * one rendered alone.
+ *
+ * Usage: ant stress, or after it
+ *        java -cp build/stress/classes:build/classes Batch.RenderStressTest
+ *        [--count N] [--threads N] [--rounds N] [--seed N]
+ *
+ * Exits with 1 if any render differs.
+ *
+ * @author pthom
+ */
+public class RenderStressTest
+{
+    private static final Palette[] PALETTES =
+    {
+        Palette.defaults(),
+        new Palette(new Color(160, 96, 32), new Color(90, 40, 10),
+                new Color(120, 60, 20), new Color(20, 20, 20))
+    };
+
+    /**
+     * @param args the command line arguments, see the class comment
+     */
+    public static void main(String[] args) throws Exception
+    {
+        int count = 64;
+        int threads = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+        int rounds = 4;
+        long seed = 42;
+        for (int i = 0; i + 1 < args.length; i += 2)
+        {
+            switch (args[i])
+            {
+                case "--count":
+                    count = Integer.parseInt(args[i + 1]);
+                    break;
+                case "--threads":
+                    threads = Integer.parseInt(args[i + 1]);
+                    break;
+                case "--rounds":
+                    rounds = Integer.parseInt(args[i + 1]);
+                    break;
+                case "--seed":
+                    seed = Long.parseLong(args[i + 1]);
+                    break;
+                default:
+                    System.err.println("Unknown option " + args[i]);
+                    System.exit(2);
+            } // end switch
+        } // end for arguments
+
+        BatchParameters parameters = new BatchParameters();
+        parameters.width = 640;
+        parameters.height = 360;
+        parameters.seed = seed;
+        BatchGenerator batch = new BatchGenerator(parameters);
+
+        // reference hashes, rendered on this thread only
+        LeafSpec[] specs = new LeafSpec[count];
+        Generator[] shared = new Generator[count];
+        long[][] expected = new long[count][PALETTES.length * 2];
+        SvgWriter svg = new SvgWriter();
+        for (int i = 0; i < count; i++)
+        {
+            specs[i] = batch.sampleLeaf(i).toSpec();
+            shared[i] = specs[i].createGenerator();
+            for (int p = 0; p < PALETTES.length; p++)
+            {
+                expected[i][2 * p] = hash(specs[i].createGenerator()
+                        .createBufferedImage(new RenderContext(PALETTES[p], true)));
+                expected[i][2 * p + 1] = hash(svg.write(
+                        specs[i].createGenerator(), PALETTES[p]));
+            } // end for palettes
+        } // end for leaves
+
+        // every (leaf, palette, shared or not) once per round, shuffled
+        List<int[]> jobs = new ArrayList<>();
+        for (int r = 0; r < rounds; r++)
+        {
+            for (int i = 0; i < count; i++)
+            {
+                for (int p = 0; p < PALETTES.length; p++)
+                {
+                    jobs.add(new int[] {i, p, 0});
+                    jobs.add(new int[] {i, p, 1});
+                } // end for palettes
+            } // end for leaves
+        } // end for rounds
+        Collections.shuffle(jobs, new Random(seed));
+
+        // keeps changing the defaults, which no render with a context reads
+        Color[] defaults = {GenColor.lamina, GenColor.background};
+        Thread mutator = new Thread(() ->
+        {
+            int n = 0;
+            while (!Thread.currentThread().isInterrupted())
+            {
+                GenColor.lamina = new Color(n & 0xffffff);
+                GenColor.background = new Color(~n & 0xffffff);
+                n += 0x010203;
+                Thread.yield();
+            } // end while running
+        }, "genColor-mutator");
+        mutator.setDaemon(true);
+        mutator.start();
+
+        AtomicInteger mismatches = new AtomicInteger();
+        ThreadLocal<SvgWriter> writers = ThreadLocal.withInitial(SvgWriter::new);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        long start = System.nanoTime();
+        try
+        {
+            List<Future<?>> futures = new ArrayList<>(jobs.size());
+            for (int[] job : jobs)
+            {
+                futures.add(pool.submit(() ->
+                {
+                    int i = job[0];
+                    int p = job[1];
+                    Generator leaf = job[2] == 0
+                            ? shared[i]
+                            : specs[i].createGenerator();
+                    long image = hash(leaf.createBufferedImage(
+                            new RenderContext(PALETTES[p], true)));
+                    long text = hash(writers.get().write(leaf, PALETTES[p]));
+                    if (image != expected[i][2 * p]
+                            || text != expected[i][2 * p + 1])
+                    {
+                        mismatches.incrementAndGet();
+                        System.err.println("Leaf " + i + " with palette " + p
+                                + (job[2] == 0 ? " (shared)" : " (new)")
+                                + " differs from the sequential render");
+                    } // end if differs
+                }));
+            } // end for jobs
+            for (Future<?> future : futures)
+            {
+                future.get();
+            } // end for futures
+        } // end try
+        finally
+        {
+            pool.shutdown();
+            mutator.interrupt();
+            mutator.join();
+            GenColor.lamina = defaults[0];
+            GenColor.background = defaults[1];
+        } // end finally
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%d renders of %d leaves on %d threads in %.2f s, "
+                + "%d differ%n", jobs.size(), count, threads, seconds,
+                mismatches.get());
+        System.exit(mismatches.get() == 0 ? 0 : 1);
+    } // end main
+
+    private static long hash(BufferedImage image)
+    {
+        int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        long h = pixels.length;
+        for (int pixel : pixels)
+        {
+            h = SplitMix64.mix64(h ^ pixel);
+        } // end for pixels
+        return h;
+    } // end hash
+
+    private static long hash(String text)
+    {
+        long h = text.length();
+        for (byte b : text.getBytes(StandardCharsets.UTF_8))
+        {
+            h = SplitMix64.mix64(h ^ b);
+        } // end for bytes
+        return h;
+    } // end hash
+} // end RenderStressTest